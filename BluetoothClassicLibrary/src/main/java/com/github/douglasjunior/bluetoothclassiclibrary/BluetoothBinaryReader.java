@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Reads the values written by {@link BluetoothBinaryWriter} from a received frame, without copying it. <br/>
+ * The reader can be reused for every frame with one of the reset methods. Reading past the end of
+ * the frame throws a {@link BufferUnderflowException}.
+ */
+public class BluetoothBinaryReader {
+
+    private byte[] array;
+    private ByteBuffer view;
+    private int position;
+    private int limit;
+    private boolean bigEndian = true;
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+
+    public BluetoothBinaryReader reset(byte[] buffer, int offset, int length) {
+        this.array = buffer;
+        this.view = null;
+        this.position = offset;
+        this.limit = offset + length;
+        return this;
+    }
+
+    public BluetoothBinaryReader reset(BluetoothFrame frame) {
+        return reset(frame.getData(), 0, frame.getLength());
+    }
+
+    /**
+     * Reads the remaining bytes of the buffer, like the read-only views of the
+     * {@link BluetoothService.OnBluetoothBufferCallback}. The position of the buffer is not changed.
+     */
+    public BluetoothBinaryReader reset(ByteBuffer buffer) {
+        this.array = null;
+        this.view = buffer;
+        this.position = buffer.position();
+        this.limit = buffer.limit();
+        return this;
+    }
+
+    public ByteOrder order() {
+        return order;
+    }
+
+    /**
+     * Sets the byte order of the next fixed-width values.
+     */
+    public BluetoothBinaryReader order(ByteOrder order) {
+        this.order = order;
+        this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+        return this;
+    }
+
+    public int remaining() {
+        return limit - position;
+    }
+
+    public boolean hasRemaining() {
+        return position < limit;
+    }
+
+    public byte readByte() {
+        require(1);
+        return at(position++);
+    }
+
+    public int readUnsignedByte() {
+        return readByte() & 0xFF;
+    }
+
+    public short readShort() {
+        return (short) readFixed(2);
+    }
+
+    public int readUnsignedShort() {
+        return (int) readFixed(2);
+    }
+
+    public int readInt() {
+        return (int) readFixed(4);
+    }
+
+    public long readUnsignedInt() {
+        return readFixed(4);
+    }
+
+    public long readLong() {
+        return readFixed(8);
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat((int) readFixed(4));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readFixed(8));
+    }
+
+    public long readUnsignedVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return value;
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    public long readSignedVarint() {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = readByte();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                // Extend the sign bit of the last group
+                if (shift + 7 < 64 && (b & 0x40) != 0)
+                    value |= -1L << (shift + 7);
+                return value;
+            }
+        }
+        throw new IllegalStateException("Malformed varint");
+    }
+
+    /**
+     * Reads the length of a blob written by {@link BluetoothBinaryWriter#writeBlob(byte[])}. The
+     * bytes can then be read in place from {@link #getPosition()} and skipped with {@link #skip(int)},
+     * or copied with {@link #readBytes(byte[], int, int)}.
+     */
+    public int readBlobLength() {
+        long length = readUnsignedVarint();
+        if (length > remaining())
+            throw new BufferUnderflowException();
+        return (int) length;
+    }
+
+    public void readBytes(byte[] destination, int offset, int length) {
+        require(length);
+        if (array != null) {
+            System.arraycopy(array, position, destination, offset, length);
+        } else {
+            for (int i = 0; i < length; i++)
+                destination[offset + i] = view.get(position + i);
+        }
+        position += length;
+    }
+
+    public void skip(int length) {
+        require(length);
+        position += length;
+    }
+
+    /**
+     * The index of the next byte in the array or buffer given to reset.
+     */
+    public int getPosition() {
+        return position;
+    }
+
+    private long readFixed(int size) {
+        require(size);
+        long value = 0;
+        if (bigEndian) {
+            for (int i = 0; i < size; i++)
+                value = (value << 8) | (at(position + i) & 0xFF);
+        } else {
+            for (int i = size - 1; i >= 0; i--)
+                value = (value << 8) | (at(position + i) & 0xFF);
+        }
+        position += size;
+        return value;
+    }
+
+    private byte at(int index) {
+        return array != null ? array[index] : view.get(index);
+    }
+
+    private void require(int bytes) {
+        if (bytes < 0 || limit - position < bytes)
+            throw new BufferUnderflowException();
+    }
+
+}
@@ -0,0 +1,214 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.nio.ByteOrder;
+
+/**
+ * Builds binary frames in a reusable buffer and writes them to the {@link BluetoothService}. <br/>
+ * Fixed-width values use the byte order of the writer, varints use LEB128. When lengthFieldSize is
+ * greater than 0, {@link #endFrame()} prefixes the frame with its length, as read by
+ * {@link LengthPrefixedFrameDecoder}.
+ *
+ * @see BluetoothBinaryReader
+ */
+public class BluetoothBinaryWriter {
+
+    private final BluetoothService service;
+    private final int lengthFieldSize;
+    private ByteOrder order = ByteOrder.BIG_ENDIAN;
+    private boolean bigEndian = true;
+
+    private byte[] buffer = new byte[64];
+    private int count;
+
+    public BluetoothBinaryWriter(BluetoothService service) {
+        this(service, 0);
+    }
+
+    /**
+     * @param service         the service the frames are written to
+     * @param lengthFieldSize the size of the length prefix, 0, 1, 2 or 4 bytes
+     */
+    public BluetoothBinaryWriter(BluetoothService service, int lengthFieldSize) {
+        if (lengthFieldSize != 0 && lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4)
+            throw new IllegalArgumentException("lengthFieldSize must be 0, 1, 2 or 4: " + lengthFieldSize);
+        this.service = service;
+        this.lengthFieldSize = lengthFieldSize;
+        this.count = lengthFieldSize;
+    }
+
+    public ByteOrder order() {
+        return order;
+    }
+
+    /**
+     * Sets the byte order of the next fixed-width values and of the length prefix.
+     */
+    public BluetoothBinaryWriter order(ByteOrder order) {
+        this.order = order;
+        this.bigEndian = order == ByteOrder.BIG_ENDIAN;
+        return this;
+    }
+
+    /**
+     * Discards the bytes written since the last frame.
+     */
+    public BluetoothBinaryWriter beginFrame() {
+        count = lengthFieldSize;
+        return this;
+    }
+
+    /**
+     * The number of bytes of the current frame, without the length prefix.
+     */
+    public int size() {
+        return count - lengthFieldSize;
+    }
+
+    /**
+     * Writes the current frame to the service and begins a new one.
+     *
+     * @return a {@link WriteFuture} completed when the frame is sent, or null without a service
+     */
+    public WriteFuture endFrame() {
+        return endFrame(false, WritePriority.BULK);
+    }
+
+    public WriteFuture endFrame(boolean flush, WritePriority priority) {
+        if (lengthFieldSize > 0) {
+            long length = count - lengthFieldSize;
+            if (lengthFieldSize < 4 && length >= 1L << (lengthFieldSize * 8))
+                throw new IllegalStateException("Frame too long for the length field: " + length);
+            int end = count;
+            count = 0;
+            writeFixed(length, lengthFieldSize);
+            count = end;
+        }
+        // The service keeps the array in the write queue, so the buffer is not handed over
+        byte[] frame = new byte[count];
+        System.arraycopy(buffer, 0, frame, 0, count);
+        count = lengthFieldSize;
+        return service != null ? service.write(frame, flush, priority) : null;
+    }
+
+    public BluetoothBinaryWriter writeByte(int value) {
+        ensureCapacity(1);
+        buffer[count++] = (byte) value;
+        return this;
+    }
+
+    public BluetoothBinaryWriter writeShort(int value) {
+        return writeFixed(value, 2);
+    }
+
+    public BluetoothBinaryWriter writeInt(int value) {
+        return writeFixed(value, 4);
+    }
+
+    public BluetoothBinaryWriter writeLong(long value) {
+        return writeFixed(value, 8);
+    }
+
+    public BluetoothBinaryWriter writeFloat(float value) {
+        return writeFixed(Float.floatToRawIntBits(value), 4);
+    }
+
+    public BluetoothBinaryWriter writeDouble(double value) {
+        return writeFixed(Double.doubleToRawLongBits(value), 8);
+    }
+
+    /**
+     * Writes the value as an unsigned LEB128 varint, negative values take 10 bytes.
+     */
+    public BluetoothBinaryWriter writeUnsignedVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[count++] = (byte) value;
+        return this;
+    }
+
+    /**
+     * Writes the value as a signed LEB128 varint.
+     */
+    public BluetoothBinaryWriter writeSignedVarint(long value) {
+        ensureCapacity(10);
+        while (true) {
+            int b = (int) (value & 0x7F);
+            value >>= 7;
+            if ((value == 0 && (b & 0x40) == 0) || (value == -1 && (b & 0x40) != 0)) {
+                buffer[count++] = (byte) b;
+                return this;
+            }
+            buffer[count++] = (byte) (b | 0x80);
+        }
+    }
+
+    public BluetoothBinaryWriter writeBytes(byte[] bytes) {
+        return writeBytes(bytes, 0, bytes.length);
+    }
+
+    public BluetoothBinaryWriter writeBytes(byte[] bytes, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, count, length);
+        count += length;
+        return this;
+    }
+
+    /**
+     * Writes the length as an unsigned varint, followed by the bytes.
+     */
+    public BluetoothBinaryWriter writeBlob(byte[] bytes) {
+        return writeBlob(bytes, 0, bytes.length);
+    }
+
+    public BluetoothBinaryWriter writeBlob(byte[] bytes, int offset, int length) {
+        writeUnsignedVarint(length);
+        return writeBytes(bytes, offset, length);
+    }
+
+    private BluetoothBinaryWriter writeFixed(long value, int size) {
+        ensureCapacity(size);
+        if (bigEndian) {
+            for (int shift = (size - 1) * 8; shift >= 0; shift -= 8)
+                buffer[count++] = (byte) (value >>> shift);
+        } else {
+            for (int shift = 0; shift < size * 8; shift += 8)
+                buffer[count++] = (byte) (value >>> shift);
+        }
+        return this;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (count + bytes <= buffer.length)
+            return;
+        byte[] grown = new byte[Math.max(count + bytes, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, count);
+        buffer = grown;
+    }
+
+}
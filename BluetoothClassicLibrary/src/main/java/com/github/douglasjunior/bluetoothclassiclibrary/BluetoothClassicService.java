@@ -46,11 +46,19 @@ import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.media.AudioManager;
+import android.os.SystemClock;
 import android.support.annotation.RequiresPermission;
 import android.util.Log;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
 
 /**
  * Code adapted from Android Open Source Project
@@ -165,21 +173,59 @@ public class BluetoothClassicService extends BluetoothService {
     /**
      * Write to the ConnectedThread in an unsynchronized manner
      *
-     * @param out The bytes to write
-     * @see
+     * @param out      The bytes to write
+     * @param flush    Whether to send the coalesced bytes immediately instead of waiting for the linger time
+     * @param priority The lane of the write in the write queue
+     * @see BluetoothConfiguration#writeQueueCapacity
+     * @see BluetoothConfiguration#writeCoalesceMaxBytes
      */
-    public synchronized void write(byte[] out) {
+    @Override
+    public WriteFuture write(byte[] out, boolean flush, WritePriority priority) {
         // Create temporary object
         ConnectedThread r;
         // Synchronize a copy of the ConnectedThread
+        synchronized (this) {
+            if (mStatus != BluetoothStatus.CONNECTED)
+                return failedWrite(new IOException("Not connected"));
 
-        if (mStatus != BluetoothStatus.CONNECTED)
-            return;
-
-        r = mConnectedThread;
+            r = mConnectedThread;
+        }
 
         // Perform the write unsynchronized
-        r.write(out);
+        return r.write(out, flush, priority);
+    }
+
+    /**
+     * Write the buffers to the ConnectedThread in an unsynchronized manner, without concatenating them.
+     *
+     * @param buffers  The bytes to write
+     * @param flush    Whether to send the coalesced bytes immediately instead of waiting for the linger time
+     * @param priority The lane of the write in the write queue
+     */
+    @Override
+    public WriteFuture write(ByteBuffer[] buffers, boolean flush, WritePriority priority) {
+        ConnectedThread r;
+        synchronized (this) {
+            if (mStatus != BluetoothStatus.CONNECTED)
+                return failedWrite(new IOException("Not connected"));
+
+            r = mConnectedThread;
+        }
+
+        return r.write(buffers, flush, priority);
+    }
+
+    /**
+     * Drops the queued writes, already failed by the watchdog, so they are not sent once the link recovers.
+     */
+    @Override
+    protected void onWriteStall() {
+        ConnectedThread r;
+        synchronized (this) {
+            r = mConnectedThread;
+        }
+        if (r != null && r.mmWriter != null)
+            r.mmWriter.failPending(new WriteTimeoutException("Link stalled"));
     }
 
     /**
@@ -302,6 +348,8 @@ public class BluetoothClassicService extends BluetoothService {
         private final BluetoothSocket mmSocket;
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
+        private final WriterThread mmWriter;
+        private byte[] mmScratch;
         private boolean canceled = false;
 
         public ConnectedThread(BluetoothSocket socket) {
@@ -320,37 +368,33 @@ public class BluetoothClassicService extends BluetoothService {
 
             mmInStream = tmpIn;
             mmOutStream = tmpOut;
+
+            if (mConfig.writeQueueCapacity > 0)
+                mmWriter = new WriterThread(this, mConfig.writeQueueCapacity);
+            else
+                mmWriter = null;
         }
 
         public void run() {
             Log.i(TAG, "BEGIN mConnectedThread");
-            byte temp;
-            final byte[] buffer = new byte[mConfig.bufferSize];
-            int i = 0;
-            byte byteDelimiter = (byte) mConfig.characterDelimiter;
+            if (mmWriter != null)
+                mmWriter.start();
+            final byte[] block = new byte[mConfig.bufferSize];
+            resetFrameDecoder();
             // Keep listening to the InputStream while connected
             while (!canceled) {
                 try {
-                    // Read from the InputStream
-                    int read = mmInStream.read();
-                    temp = (byte) read;
-
-                    if (temp == byteDelimiter) {
-                        if (i > 0) {
-                            dispatchBuffer(buffer, i);
-                            i = 0;
-                        }
-                        continue;
-                    }
-                    if (i == buffer.length - 1) {
-                        dispatchBuffer(buffer, i);
-                        i = 0;
-                    }
-                    buffer[i] = temp;
-                    i++;
-                    //System.out.println("read: " + new String(buffer, 0 , i));
+                    // Read all the bytes available from the InputStream at once
+                    int read = mmInStream.read(block, 0, block.length);
+                    if (read < 0)
+                        throw new IOException("End of stream");
+
+                    // Dispatch every frame of the block in a single pass
+                    decodeData(block, 0, read);
                 } catch (Exception e) {
                     Log.e(TAG, "disconnected", e);
+                    if (mmWriter != null)
+                        mmWriter.cancel();
                     connectionLost();
                     break;
                 }
@@ -358,43 +402,219 @@ public class BluetoothClassicService extends BluetoothService {
 
         }
 
-        private void dispatchBuffer(byte[] buffer, int i) {
-            final byte[] data = new byte[i];
-            System.arraycopy(buffer, 0, data, 0, i);
-            if (onEventCallback != null) {
-                runOnMainThread(new Runnable() {
-                    @Override
-                    public void run() {
-                        onEventCallback.onDataRead(data, data.length);
-                    }
-                });
-            }
+        /**
+         * Write to the connected OutStream, or add the bytes to the write queue.
+         *
+         * @param buffer   The bytes to write
+         * @param flush    Whether to bypass the write coalescing
+         * @param priority The lane of the write in the write queue
+         */
+        public WriteFuture write(byte[] buffer, boolean flush, WritePriority priority) {
+            if (mmWriter != null && mmWriter.rejects(priority))
+                return failedWrite(new RejectedExecutionException("Write queue is full"));
+            WriteFuture future = newWriteFuture();
+            if (mmWriter != null)
+                mmWriter.enqueue(new WriteRequest(buffer, flush, priority, future));
+            else
+                writeToStream(buffer, future);
+            return future;
+        }
+
+        /**
+         * Write the buffers to the connected OutStream, or add them to the write queue.
+         *
+         * @param buffers  The bytes to write
+         * @param flush    Whether to bypass the write coalescing
+         * @param priority The lane of the write in the write queue
+         */
+        public WriteFuture write(ByteBuffer[] buffers, boolean flush, WritePriority priority) {
+            if (mmWriter != null && mmWriter.rejects(priority))
+                return failedWrite(new RejectedExecutionException("Write queue is full"));
+            WriteFuture future = newWriteFuture();
+            WriteRequest request = new WriteRequest(buffers, flush, priority, future);
+            if (mmWriter != null)
+                mmWriter.enqueue(request);
+            else
+                writeToStream(request, null);
+            return future;
         }
 
         /**
          * Write to the connected OutStream.
          *
          * @param buffer The bytes to write
+         * @param future Completed when the bytes are flushed
          */
-        public void write(final byte[] buffer) {
+        private void writeToStream(final byte[] buffer, WriteFuture future) {
             try {
-                mmOutStream.write(buffer);
-                mmOutStream.flush();
+                writeToStream(buffer, 0, buffer.length);
+                flushStream();
 
-                if (onEventCallback != null)
-                    runOnMainThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            onEventCallback.onDataWrite(buffer);
+                if (!future.isDone())
+                    dispatchDataWrite(buffer);
+                completeWrite(future, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Exception during write", e);
+                completeWrite(future, e);
+            }
+        }
+
+        /**
+         * Write every buffer of the request to the connected OutStream with a single flush.
+         * For bulk writes of the writer thread, the pending control writes are sent every
+         * {@link BluetoothConfiguration#writeChunkSize} bytes. The stream is held for the whole request,
+         * so the buffers of concurrent writes are never interleaved.
+         *
+         * @param request The write
+         * @param writer  The writer thread, or null when writing in the calling thread
+         */
+        private synchronized void writeToStream(WriteRequest request, WriterThread writer) {
+            final int chunkSize = writer != null && request.priority == WritePriority.BULK
+                    && request.length > mConfig.writeChunkSize ? mConfig.writeChunkSize : 0;
+            // Failed by a timeout while queued
+            if (request.future.isDone())
+                return;
+            try {
+                int untilControl = chunkSize;
+                for (ByteBuffer buffer : request.buffers) {
+                    int position = buffer.position();
+                    final int limit = buffer.limit();
+                    while (position < limit) {
+                        int count = limit - position;
+                        if (chunkSize > 0 && count > untilControl)
+                            count = untilControl;
+                        writeToStream(buffer, position, count);
+                        position += count;
+                        if (chunkSize > 0 && (untilControl -= count) == 0) {
+                            flushStream();
+                            writer.writeControl();
+                            untilControl = chunkSize;
+                            // Failed by a timeout, the rest of the bytes is not sent
+                            if (request.future.isDone())
+                                return;
                         }
-                    });
+                    }
+                }
+                flushStream();
+
+                if (request.data != null && !request.future.isDone())
+                    dispatchDataWrite(request.data);
+                completeWrite(request.future, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Exception during write", e);
+                completeWrite(request.future, e);
+            }
+        }
+
+        /**
+         * Write the coalesced bytes to the connected OutStream with a single flush.
+         *
+         * @param buffer  The coalesced bytes
+         * @param length  The number of bytes to write
+         * @param written The writes merged in the buffer, cleared after the call
+         */
+        private void writeToStream(byte[] buffer, int length, List<WriteRequest> written) {
+            // Leave out the writes failed by a timeout while coalesced
+            boolean compact = false;
+            for (int i = 0; i < written.size() && !compact; i++)
+                compact = written.get(i).future.isDone();
+            if (compact) {
+                length = 0;
+                for (int i = written.size() - 1; i >= 0; i--)
+                    if (written.get(i).future.isDone())
+                        written.remove(i);
+                for (int i = 0; i < written.size(); i++) {
+                    WriteRequest request = written.get(i);
+                    request.copyTo(buffer, length);
+                    length += request.length;
+                }
+                if (length == 0)
+                    return;
+            }
+            Exception failure = null;
+            try {
+                writeToStream(buffer, 0, length);
+                flushStream();
             } catch (Exception e) {
                 Log.e(TAG, "Exception during write", e);
+                failure = e;
             }
+            for (int i = 0; i < written.size(); i++) {
+                WriteRequest request = written.get(i);
+                if (failure == null && request.data != null && !request.future.isDone())
+                    dispatchDataWrite(request.data);
+                completeWrite(request.future, failure);
+            }
+            written.clear();
+        }
+
+        private synchronized void writeToStream(ByteBuffer buffer, int position, int length) throws IOException {
+            if (buffer.hasArray()) {
+                writeToStream(buffer.array(), buffer.arrayOffset() + position, length);
+                return;
+            }
+            // Direct and read-only buffers are copied through a small array
+            if (mmScratch == null || mmScratch.length < Math.min(length, 4096))
+                mmScratch = new byte[Math.min(length, 4096)];
+            ByteBuffer source = buffer.duplicate();
+            source.position(position);
+            while (length > 0) {
+                int count = Math.min(length, mmScratch.length);
+                source.get(mmScratch, 0, count);
+                writeToStream(mmScratch, 0, count);
+                length -= count;
+            }
+        }
+
+        private synchronized void writeToStream(byte[] buffer, int offset, int length) throws IOException {
+            if (writeRateLimiter == null) {
+                writeChunk(buffer, offset, length);
+            } else {
+                // Pace the bytes in bursts, so a large write does not overrun the device
+                final int burst = writeRateLimiter.getBurstBytes();
+                for (int end = offset + length; offset < end; offset += burst) {
+                    int count = Math.min(burst, end - offset);
+                    try {
+                        writeRateLimiter.acquire(count);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while throttled");
+                    }
+                    writeChunk(buffer, offset, count);
+                }
+            }
+        }
+
+        /**
+         * Write to the connected OutStream, watched by the stall detection.
+         */
+        private void writeChunk(byte[] buffer, int offset, int length) throws IOException {
+            beginWriteChunk();
+            try {
+                mmOutStream.write(buffer, offset, length);
+            } finally {
+                endWriteChunk();
+            }
+        }
+
+        private synchronized void flushStream() throws IOException {
+            mmOutStream.flush();
+        }
+
+        private void dispatchDataWrite(final byte[] buffer) {
+            if (onEventCallback != null)
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onEventCallback.onDataWrite(buffer);
+                    }
+                });
         }
 
         public void cancel() {
             canceled = true;
+            if (mmWriter != null)
+                mmWriter.cancel();
             try {
                 mmSocket.close();
             } catch (Exception e) {
@@ -413,6 +633,178 @@ public class BluetoothClassicService extends BluetoothService {
         }
     }
 
+    /**
+     * This thread runs during a connection when the write queue is enabled. It writes the queued bytes to the
+     * ConnectedThread, so the callers of write() do not wait for the device.
+     */
+    private class WriterThread extends Thread {
+        private final ConnectedThread mmConnection;
+        private final int mmCapacity;
+        private final LinkedList<WriteRequest> mmControl = new LinkedList<>();
+        private final LinkedList<WriteRequest> mmBulk = new LinkedList<>();
+        private volatile boolean canceled = false;
+
+        public WriterThread(ConnectedThread connection, int capacity) {
+            mmConnection = connection;
+            mmCapacity = capacity;
+        }
+
+        /**
+         * @return whether a write of the priority would be rejected because its lane is full
+         */
+        public synchronized boolean rejects(WritePriority priority) {
+            LinkedList<WriteRequest> lane = priority == WritePriority.CONTROL ? mmControl : mmBulk;
+            return mConfig.writeOverflowPolicy == WriteOverflowPolicy.REJECT && !canceled && lane.size() >= mmCapacity;
+        }
+
+        public synchronized void enqueue(WriteRequest request) {
+            LinkedList<WriteRequest> lane = request.priority == WritePriority.CONTROL ? mmControl : mmBulk;
+            while (!canceled && lane.size() >= mmCapacity) {
+                if (mConfig.writeOverflowPolicy == WriteOverflowPolicy.REJECT) {
+                    // The lane filled up since rejects() was checked
+                    completeWrite(request.future, new RejectedExecutionException("Write queue is full"));
+                    return;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    Log.e(TAG, "Interrupted while waiting for the write queue", e);
+                    completeWrite(request.future, new IOException("Interrupted while waiting for the write queue"));
+                    return;
+                }
+            }
+            if (canceled) {
+                completeWrite(request.future, new IOException("Connection closed"));
+                return;
+            }
+            lane.add(request);
+            notifyAll();
+        }
+
+        /**
+         * Takes the next write, the control lane first.
+         *
+         * @param timeoutMillis How long to wait for a write, or a negative value to wait forever
+         * @return the next write, or null if none was queued before the timeout
+         */
+        private synchronized WriteRequest poll(long timeoutMillis) throws InterruptedException {
+            long deadline = SystemClock.uptimeMillis() + timeoutMillis;
+            while (mmControl.isEmpty() && mmBulk.isEmpty()) {
+                if (canceled)
+                    throw new InterruptedException();
+                if (timeoutMillis < 0) {
+                    wait();
+                } else {
+                    long wait = deadline - SystemClock.uptimeMillis();
+                    if (wait <= 0)
+                        return null;
+                    wait(wait);
+                }
+            }
+            notifyAll();
+            return mmControl.isEmpty() ? mmBulk.removeFirst() : mmControl.removeFirst();
+        }
+
+        private synchronized WriteRequest pollControl() {
+            if (mmControl.isEmpty())
+                return null;
+            notifyAll();
+            return mmControl.removeFirst();
+        }
+
+        public void run() {
+            Log.i(TAG, "BEGIN mWriterThread");
+            setName("WriterThread");
+            final int maxBytes = mConfig.writeCoalesceMaxBytes;
+            final byte[] coalesced = maxBytes > 0 ? new byte[maxBytes] : null;
+            final List<WriteRequest> written = new ArrayList<>();
+            int pending = 0;
+            long deadline = 0;
+            while (!canceled) {
+                try {
+                    WriteRequest request;
+                    if (pending == 0) {
+                        request = poll(-1);
+                    } else {
+                        // Wait for more writes until the linger time of the oldest coalesced bytes
+                        request = poll(Math.max(0, deadline - SystemClock.uptimeMillis()));
+                        if (request == null) {
+                            mmConnection.writeToStream(coalesced, pending, written);
+                            pending = 0;
+                            continue;
+                        }
+                    }
+                    // Failed by a timeout while queued
+                    if (request.future.isDone())
+                        continue;
+
+                    if (coalesced == null || request.length > maxBytes) {
+                        // Too large to coalesce, keep the order with the bytes already coalesced
+                        if (pending > 0) {
+                            mmConnection.writeToStream(coalesced, pending, written);
+                            pending = 0;
+                        }
+                        mmConnection.writeToStream(request, this);
+                        continue;
+                    }
+                    if (request.length > maxBytes - pending) {
+                        mmConnection.writeToStream(coalesced, pending, written);
+                        pending = 0;
+                    }
+                    if (pending == 0)
+                        deadline = SystemClock.uptimeMillis() + mConfig.writeLingerMillis;
+                    request.copyTo(coalesced, pending);
+                    pending += request.length;
+                    written.add(request);
+                    // Control writes do not wait for the linger time
+                    if (request.flush || request.priority == WritePriority.CONTROL || pending == maxBytes) {
+                        mmConnection.writeToStream(coalesced, pending, written);
+                        pending = 0;
+                    }
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            IOException closed = new IOException("Connection closed");
+            for (int i = 0; i < written.size(); i++)
+                completeWrite(written.get(i).future, closed);
+            failPending(closed);
+        }
+
+        /**
+         * Writes the pending control writes, called between the chunks of a bulk write.
+         */
+        private void writeControl() {
+            WriteRequest control;
+            while (!canceled && (control = pollControl()) != null)
+                mmConnection.writeToStream(control, null);
+        }
+
+        private void failPending(IOException cause) {
+            synchronized (this) {
+                for (WriteRequest request : mmControl)
+                    completeWrite(request.future, cause);
+                for (WriteRequest request : mmBulk)
+                    completeWrite(request.future, cause);
+                mmControl.clear();
+                mmBulk.clear();
+                notifyAll();
+            }
+        }
+
+        public void cancel() {
+            canceled = true;
+            try {
+                interrupt();
+            } catch (Exception e) {
+                Log.e(TAG, "interrupt() of Thread failed", e);
+            }
+            // Release the callers waiting for space in the queue
+            failPending(new IOException("Connection closed"));
+        }
+    }
+
     // The BroadcastReceiver that listens for discovered devices and
     // changes the title when discovery is finished
     private final BroadcastReceiver mScanReceiver = new BroadcastReceiver() {
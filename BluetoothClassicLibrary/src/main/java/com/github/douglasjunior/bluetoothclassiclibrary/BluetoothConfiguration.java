@@ -59,16 +59,178 @@ public class BluetoothConfiguration {
 
     /**
      * Maximum of bytes to keep in the buffer before call the
-     * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothEventCallback#onDataRead(byte[], int)}
+     * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothEventCallback#onDataRead(byte[], int)},
+     * or the initial size of the buffer if {@link #maxFrameSize} is set.
      */
     public int bufferSize;
 
+    /**
+     * Maximum size of a received frame. The buffer starts with {@link #bufferSize} bytes and grows
+     * up to this size, longer frames are delivered in fragments
+     * (see {@link BluetoothFrame#isFragment()}). <br/>
+     * Set 0 to use a fixed buffer and frames up to {@link #bufferSize} - 1 bytes.
+     */
+    public int maxFrameSize;
+
     /**
      * Character delimiter to know if a data is received completly and call the
      * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothEventCallback#onDataRead(byte[], int)}
      */
     public char characterDelimiter;
 
+    /**
+     * Sequence of bytes that ends each received frame, like {@code "\r\n".getBytes()}.
+     * When set, it is used instead of {@link #characterDelimiter} to split the received data.
+     */
+    public byte[] delimiterBytes;
+
+    /**
+     * Decoder used to split the received bytes into frames before calling the
+     * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothEventCallback#onDataRead(byte[], int)}. <br/>
+     * Set {@link null} to use a {@link DelimiterFrameDecoder} with {@link #characterDelimiter}
+     * (or {@link #delimiterBytes}), {@link #bufferSize} and {@link #maxFrameSize}.
+     *
+     * @see LengthPrefixedFrameDecoder
+     * @see FixedLengthFrameDecoder
+     * @see SlipFrameDecoder
+     * @see CobsFrameDecoder
+     */
+    public FrameDecoder frameDecoder;
+
+    /**
+     * Number of frames kept in a {@link FramePool} to deliver the received frames to the
+     * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothFrameCallback}
+     * without allocating, each pooled frame holds up to {@link #bufferSize} bytes. <br/>
+     * Set 0 to disable the pool.
+     */
+    public int framePoolSize;
+
+    /**
+     * Maximum number of received frames delivered to the callbacks in a single post, the frames
+     * decoded in the same read are delivered together. <br/>
+     * Set 0 to deliver each frame in its own post.
+     *
+     * @see com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothReadBatchCallback
+     */
+    public int readBatchMaxFrames;
+
+    /**
+     * Maximum time, in milliseconds, that a received frame waits for other frames to be delivered
+     * in the same batch. Only used when {@link #readBatchMaxFrames} is greater than 0 and
+     * {@link #callListenersInMainThread} is true. <br/>
+     * Set 0 to deliver the batch at the end of each read.
+     */
+    public long readBatchWindowMillis;
+
+    /**
+     * Maximum number of received frames, or batches, waiting to be delivered to the main thread
+     * when {@link #callListenersInMainThread} is true. <br/>
+     * Set 0 for no limit.
+     *
+     * @see #readOverflowPolicy
+     */
+    public int readQueueCapacity;
+
+    /**
+     * What to do with a received frame when {@link #readQueueCapacity} is reached.
+     * Default is {@link ReadOverflowPolicy#BLOCK}.
+     */
+    public ReadOverflowPolicy readOverflowPolicy = ReadOverflowPolicy.BLOCK;
+
+    /**
+     * Interval, in milliseconds, of the {@link ReadMetrics} delivered to the
+     * {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService.OnBluetoothMetricsCallback}. <br/>
+     * Set 0 to disable the metrics.
+     */
+    public long metricsIntervalMillis;
+
+    /**
+     * Only for {@link BluetoothClassicService}. <br/>
+     * Maximum number of writes of each {@link WritePriority} waiting for the writer thread. When greater than 0,
+     * {@link BluetoothService#write(byte[])} only adds the bytes to a queue and returns, and a
+     * dedicated thread writes them to the device. <br/>
+     * Set 0 to write in the calling thread.
+     *
+     * @see #writeOverflowPolicy
+     */
+    public int writeQueueCapacity;
+
+    /**
+     * What to do when {@link #writeQueueCapacity} is reached.
+     * Default is {@link WriteOverflowPolicy#BLOCK}.
+     */
+    public WriteOverflowPolicy writeOverflowPolicy = WriteOverflowPolicy.BLOCK;
+
+    /**
+     * Only for {@link BluetoothClassicService}, requires {@link #writeQueueCapacity}. <br/>
+     * Maximum number of bytes the writer thread merges from the pending writes before
+     * writing and flushing them at once. Larger writes are sent alone. <br/>
+     * Set 0 to write and flush every write separately.
+     *
+     * @see #writeLingerMillis
+     * @see BluetoothService#write(byte[], boolean)
+     */
+    public int writeCoalesceMaxBytes;
+
+    /**
+     * Only for {@link BluetoothClassicService}. <br/>
+     * How long, in milliseconds, the coalesced bytes wait for more writes before they are flushed. <br/>
+     * With 0 only the writes already in the queue are merged.
+     *
+     * @see #writeCoalesceMaxBytes
+     */
+    public long writeLingerMillis;
+
+    /**
+     * Only for {@link BluetoothClassicService}, requires {@link #writeQueueCapacity}. <br/>
+     * Maximum number of bytes of a {@link WritePriority#BULK} write sent to the device at once.
+     * The pending {@link WritePriority#CONTROL} writes are sent between the chunks, so their latency
+     * does not depend on the size of the bulk write. <br/>
+     * Set 0 to send every write at once.
+     */
+    public int writeChunkSize;
+
+    /**
+     * Maximum sustained outbound rate, in bytes per second, for devices that overrun their input
+     * buffer at full speed. <br/>
+     * Set 0 to send without pacing.
+     *
+     * @see #writeBurstBytes
+     * @see BluetoothService#getWriteRateLimiter()
+     */
+    public long writeRateBytesPerSecond;
+
+    /**
+     * Number of bytes sent at full speed after an idle period when {@link #writeRateBytesPerSecond} is set.
+     * When 0, the burst is a tenth of a second of the rate.
+     */
+    public int writeBurstBytes;
+
+    /**
+     * Maximum time, in milliseconds, from a write to its completion. Late writes fail their
+     * {@link WriteFuture} with a {@link WriteTimeoutException}. <br/>
+     * Set 0 to wait forever.
+     */
+    public long writeTimeoutMillis;
+
+    /**
+     * Maximum time, in milliseconds, the device may take to accept a chunk of bytes: a write to the
+     * stream in {@link BluetoothClassicService}, or a packet acknowledgment in {@link BluetoothLeService}.
+     * After that the link is considered stalled, the pending writes fail with a {@link WriteTimeoutException}
+     * and the {@link BluetoothService.OnBluetoothWriteStallCallback} is called. <br/>
+     * Set 0 to disable the stall detection.
+     *
+     * @see #disconnectOnWriteStall
+     */
+    public long writeChunkTimeoutMillis;
+
+    /**
+     * Whether to disconnect when the link stalls.
+     *
+     * @see #writeChunkTimeoutMillis
+     */
+    public boolean disconnectOnWriteStall = false;
+
     /**
      * Required in {@link BluetoothClassicService}, is the UUID of the device that will connect in serial mode. <br/>
      * Optional in {@link BluetoothLeService}, is the UUID of the device that will be filtered in scan.
@@ -114,6 +276,67 @@ public class BluetoothConfiguration {
      */
     public int connectionPriority;
 
+    /**
+     * Used only by {@link BluetoothLeService} <br/>
+     * Whether to request {@link BluetoothGatt#CONNECTION_PRIORITY_HIGH} while a large transfer is running,
+     * and to restore {@link #connectionPriority} once the link has been idle for
+     * {@link #connectionPriorityIdleMillis}. The transfer must reach {@link #highPriorityWriteBytes}
+     * or {@link #highPriorityReadBytesPerSecond} to raise the priority, and drop below half of them to
+     * be considered idle.
+     */
+    public boolean adaptiveConnectionPriority = false;
+
+    /**
+     * Used only by {@link BluetoothLeService} with {@link #adaptiveConnectionPriority} <br/>
+     * The bytes waiting to be written that raise the connection priority. Set 0 to ignore the writes.
+     */
+    public int highPriorityWriteBytes = 4096;
+
+    /**
+     * Used only by {@link BluetoothLeService} with {@link #adaptiveConnectionPriority} <br/>
+     * The rate of received bytes that raises the connection priority. Set 0 to ignore the reads.
+     */
+    public int highPriorityReadBytesPerSecond = 2048;
+
+    /**
+     * Used only by {@link BluetoothLeService} with {@link #adaptiveConnectionPriority} <br/>
+     * How long, in milliseconds, the link must be idle before {@link #connectionPriority} is restored.
+     */
+    public long connectionPriorityIdleMillis = 3000;
+
+    /**
+     * Used only by {@link BluetoothLeService} <br/>
+     * The GATT operations (writes, reads, MTU and RSSI requests) run one at a time. When greater
+     * than zero, an operation whose callback has not arrived within this many milliseconds fails
+     * and the next one is started. The default is 0, wait for the callback indefinitely.
+     */
+    public long gattOperationTimeoutMillis = 0;
+
+    /**
+     * Used only by {@link BluetoothLeService} <br/>
+     * Whether to write the packets without response, when the characteristic supports
+     * {@link android.bluetooth.BluetoothGattCharacteristic#PROPERTY_WRITE_NO_RESPONSE}. The next packet
+     * is sent as soon as the previous one is accepted by the Bluetooth stack, instead of after the device
+     * acknowledgment, so several packets may be sent per connection interval. A write is then complete
+     * when its last packet is accepted by the stack.
+     *
+     * @see #writeWindowPackets
+     */
+    public boolean writeWithoutResponse = false;
+
+    /**
+     * Used only by {@link BluetoothLeService} with {@link #writeWithoutResponse} <br/>
+     * The number of packets that may be sent before the device acknowledges them. This is a flow control
+     * between the app and the device, not a pipeline: Android still has a single write outstanding, the
+     * speed comes from the writes without response. <br/>
+     * Each packet takes a credit, and the sending stops when no credit is left. The app must call
+     * {@link BluetoothLeService#addWriteCredits(int)} with the packets acknowledged by the device, usually
+     * parsed from its notifications, otherwise the writes wait forever. Set {@link #writeChunkTimeoutMillis}
+     * to fail the pending writes, as a stalled link, when no credit is returned in time. <br/>
+     * Set 0 to send without credits, if the device does not report its progress.
+     */
+    public int writeWindowPackets = 0;
+
     public BluetoothConfiguration() {
         setDefaultTransport();
     }
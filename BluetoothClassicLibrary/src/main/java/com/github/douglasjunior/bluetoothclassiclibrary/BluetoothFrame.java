@@ -0,0 +1,120 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A received frame delivered to the {@link BluetoothService.OnBluetoothFrameCallback}. <br/>
+ * Frames taken from a {@link FramePool} must be released with {@link #release()} when the data is
+ * no longer used, after that the data array is reused for another frame.
+ */
+public final class BluetoothFrame {
+
+    private final FramePool pool;
+    private final byte[] data;
+    private int length;
+    boolean fragment;
+    private final AtomicInteger refCount = new AtomicInteger();
+
+    // The System.nanoTime() when the frame was read, or 0.
+    long readNanos;
+
+    // Reused by the BluetoothService to deliver this frame without allocating a new Runnable.
+    Runnable delivery;
+
+    BluetoothFrame(FramePool pool, int capacity) {
+        this.pool = pool;
+        this.data = new byte[capacity];
+    }
+
+    /**
+     * Creates a frame that does not belong to any pool.
+     */
+    static BluetoothFrame copyOf(byte[] buffer, int offset, int length) {
+        BluetoothFrame frame = new BluetoothFrame(null, length);
+        frame.set(buffer, offset, length);
+        return frame;
+    }
+
+    void set(byte[] buffer, int offset, int length) {
+        System.arraycopy(buffer, offset, data, 0, length);
+        this.length = length;
+        this.fragment = false;
+        refCount.set(1);
+    }
+
+    /**
+     * The frame bytes, from index 0 to {@link #getLength()}. The array may be longer than the frame.
+     */
+    public byte[] getData() {
+        return data;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Whether the received frame exceeds the maximum frame size and continues in the next frame.
+     * The last part of the received frame is not a fragment.
+     *
+     * @see BluetoothConfiguration#maxFrameSize
+     */
+    public boolean isFragment() {
+        return fragment;
+    }
+
+    /**
+     * Whether this frame will be returned to a {@link FramePool} when released.
+     */
+    public boolean isPooled() {
+        return pool != null;
+    }
+
+    /**
+     * Increments the reference count, each call must be followed by a {@link #release()}.
+     */
+    public BluetoothFrame retain() {
+        if (refCount.getAndIncrement() <= 0) {
+            refCount.getAndDecrement();
+            throw new IllegalStateException("Frame already released.");
+        }
+        return this;
+    }
+
+    /**
+     * Decrements the reference count and returns the frame to its pool when it reaches zero.
+     */
+    public void release() {
+        int count = refCount.decrementAndGet();
+        if (count < 0) {
+            refCount.incrementAndGet();
+            throw new IllegalStateException("Frame already released.");
+        }
+        if (count == 0 && pool != null)
+            pool.recycle(this);
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * An {@link OutputStream} and {@link WritableByteChannel} view of a connected {@link BluetoothService}. <br/>
+ * The bytes are collected in a buffer of bufferSize bytes and sent in chunks of that size. When
+ * maxPendingWrites chunks are waiting for the device, the writing thread blocks until the oldest one
+ * completes, so large payloads can be streamed without holding them in memory. The chunk arrays are
+ * reused once written, so the chunks are not reported to
+ * {@link BluetoothService.OnBluetoothEventCallback#onDataWrite(byte[])}.
+ * Do not use it in the main thread.
+ */
+public class BluetoothOutputStream extends OutputStream implements WritableByteChannel {
+
+    private final BluetoothService service;
+    private final int bufferSize;
+    private final WriteFuture[] pending;
+    private final ByteBuffer[][] pendingChunks;
+    private int pendingStart;
+    private int pendingCount;
+    // The chunks written, ready to be reused. At most maxPendingWrites + 1 chunks are allocated.
+    private final ByteBuffer[][] free;
+    private int freeCount;
+    private ByteBuffer[] chunk;
+    private byte[] buffer;
+    private int count;
+    private boolean closed;
+
+    public BluetoothOutputStream(BluetoothService service) {
+        this(service, 1024, 1);
+    }
+
+    /**
+     * @param service          The connected service.
+     * @param bufferSize       Size of the chunks sent to the service.
+     * @param maxPendingWrites Maximum number of chunks waiting for the device.
+     */
+    public BluetoothOutputStream(BluetoothService service, int bufferSize, int maxPendingWrites) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be greater than 0");
+        if (maxPendingWrites < 1)
+            throw new IllegalArgumentException("maxPendingWrites must be greater than 0");
+        this.service = service;
+        this.bufferSize = bufferSize;
+        this.pending = new WriteFuture[maxPendingWrites];
+        this.pendingChunks = new ByteBuffer[maxPendingWrites][];
+        this.free = new ByteBuffer[maxPendingWrites + 1][];
+        nextChunk();
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        ensureOpen();
+        buffer[count++] = (byte) b;
+        if (count == bufferSize)
+            sendBuffer(false);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        if (off < 0 || len < 0 || off + len > b.length)
+            throw new IndexOutOfBoundsException();
+        ensureOpen();
+        while (len > 0) {
+            int n = Math.min(len, bufferSize - count);
+            System.arraycopy(b, off, buffer, count, n);
+            count += n;
+            off += n;
+            len -= n;
+            if (count == bufferSize)
+                sendBuffer(false);
+        }
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        if (closed)
+            throw new ClosedChannelException();
+        int written = src.remaining();
+        while (src.hasRemaining()) {
+            int n = Math.min(src.remaining(), bufferSize - count);
+            src.get(buffer, count, n);
+            count += n;
+            if (count == bufferSize)
+                sendBuffer(false);
+        }
+        return written;
+    }
+
+    /**
+     * Sends the buffered bytes and waits until every chunk is written to the device.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        if (count > 0)
+            sendBuffer(true);
+        while (pendingCount > 0)
+            awaitOldest();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return !closed;
+    }
+
+    /**
+     * Flushes the buffered bytes. The connection is kept open.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        try {
+            flush();
+        } finally {
+            closed = true;
+            buffer = null;
+            chunk = null;
+            freeCount = 0;
+        }
+    }
+
+    private void sendBuffer(boolean flush) throws IOException {
+        if (pendingCount == pending.length)
+            awaitOldest();
+        // The service keeps the buffer until the write is complete, so it is handed over and replaced
+        ByteBuffer view = chunk[0];
+        view.clear();
+        view.limit(count);
+        int slot = (pendingStart + pendingCount) % pending.length;
+        pendingChunks[slot] = chunk;
+        pending[slot] = service.write(chunk, flush, WritePriority.BULK);
+        pendingCount++;
+        nextChunk();
+    }
+
+    private void nextChunk() {
+        chunk = freeCount > 0 ? free[--freeCount] : new ByteBuffer[]{ByteBuffer.wrap(new byte[bufferSize])};
+        buffer = chunk[0].array();
+        count = 0;
+    }
+
+    private void awaitOldest() throws IOException {
+        WriteFuture future = pending[pendingStart];
+        try {
+            future.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the device");
+        }
+        ByteBuffer[] written = pendingChunks[pendingStart];
+        pending[pendingStart] = null;
+        pendingChunks[pendingStart] = null;
+        pendingStart = (pendingStart + 1) % pending.length;
+        pendingCount--;
+        // A failed chunk may still be read by the service, after a timeout, so it is not reused
+        if (future.isSuccess() && !closed)
+            free[freeCount++] = written;
+        if (!future.isSuccess()) {
+            Throwable cause = future.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            IOException e = new IOException(String.valueOf(cause));
+            e.initCause(cause);
+            throw e;
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed)
+            throw new IOException("Stream closed");
+    }
+
+}
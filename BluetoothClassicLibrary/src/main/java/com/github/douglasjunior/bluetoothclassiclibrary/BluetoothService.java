@@ -26,10 +26,18 @@ package com.github.douglasjunior.bluetoothclassiclibrary;
 
 import android.bluetooth.BluetoothDevice;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.util.Log;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Created by douglas on 23/03/15.
@@ -41,20 +49,152 @@ public abstract class BluetoothService {
 
     protected static BluetoothService mDefaultServiceInstance;
     protected BluetoothConfiguration mConfig;
-    protected BluetoothStatus mStatus;
+    protected volatile BluetoothStatus mStatus;
 
     private final Handler handler;
 
+    private final FrameDecoder frameDecoder;
+
+    // Guards the decoder, which is also flushed from the main thread.
+    private final ReentrantLock decoderLock = new ReentrantLock();
+
+    private final Runnable idleFlush = new Runnable() {
+        @Override
+        public void run() {
+            // If a read is being decoded, it will restart the idle period when done. Waiting for it
+            // could block the main thread while the reader waits for a full read queue.
+            if (!decoderLock.tryLock())
+                return;
+            try {
+                readNanos = readMetrics != null ? System.nanoTime() : 0;
+                ((RawFrameDecoder) frameDecoder).flush(frameListener);
+                endOfRead();
+            } finally {
+                decoderLock.unlock();
+            }
+        }
+    };
+
+    private final FramePool framePool;
+
+    private final ReadQueue readQueue;
+
+    private final Runnable readQueueDrain = new Runnable() {
+        @Override
+        public void run() {
+            Object item;
+            while ((item = readQueue.poll()) != null) {
+                deliverReadItem(item, readQueue.getPolledReadNanos());
+            }
+        }
+    };
+
+    private final ReadMetricsRecorder readMetrics;
+
+    protected final WriteRateLimiter writeRateLimiter;
+
+    // The writes checked by the watchdog, null when no write timeout is configured.
+    private final LinkedList<WriteFuture> watchedWrites;
+
+    // The SystemClock.uptimeMillis() when the chunk being written started, or 0.
+    private volatile long chunkStartedAt = 0;
+
+    private final Runnable writeWatchdog = new Runnable() {
+        @Override
+        public void run() {
+            checkWrites();
+            if (mStatus == BluetoothStatus.CONNECTED)
+                handler.postDelayed(this, getWatchdogInterval());
+        }
+    };
+
+    // The System.nanoTime() of the data being decoded, guarded by the decoderLock.
+    private long readNanos;
+
+    private final FrameDecoder.FrameListener frameListener = new FrameDecoder.FrameListener() {
+        @Override
+        public void onFrame(byte[] buffer, int offset, int length, boolean fragment) {
+            dispatchFrame(buffer, offset, length, fragment);
+        }
+    };
+
     protected OnBluetoothEventCallback onEventCallback;
 
     protected OnBluetoothScanCallback onScanCallback;
 
+    protected OnBluetoothFrameCallback onFrameCallback;
+
+    protected OnBluetoothReadBatchCallback onReadBatchCallback;
+
+    protected OnBluetoothBufferCallback onBufferCallback;
+
+    protected OnBluetoothMetricsCallback onMetricsCallback;
+
+    protected OnBluetoothWriteStallCallback onWriteStallCallback;
+
+    // Read-only views over the last two arrays holding frames, usually the decoder buffer and the read block.
+    private byte[] viewArray, previousViewArray;
+    private ByteBuffer view, previousView;
+
+    private final Object batchLock = new Object();
+    private ReadBatch readBatch;
+    private boolean readBatchScheduled = false;
+
+    private final Runnable readBatchTimeout = new Runnable() {
+        @Override
+        public void run() {
+            ReadBatch batch;
+            synchronized (batchLock) {
+                batch = takeReadBatch();
+            }
+            if (batch != null)
+                deliverReadBatch(batch);
+        }
+    };
+
     private static BluetoothConfiguration mDefaultConfiguration;
 
     protected BluetoothService(BluetoothConfiguration config) {
         this.mConfig = config;
         this.mStatus = BluetoothStatus.NONE;
         this.handler = new Handler();
+        if (config.frameDecoder != null)
+            this.frameDecoder = config.frameDecoder;
+        else
+            this.frameDecoder = createDefaultFrameDecoder(config);
+        if (config.framePoolSize > 0)
+            this.framePool = new FramePool(config.framePoolSize, config.bufferSize);
+        else
+            this.framePool = null;
+        if (config.readQueueCapacity > 0)
+            this.readQueue = new ReadQueue(config.readQueueCapacity, config.readOverflowPolicy);
+        else
+            this.readQueue = null;
+        if (config.metricsIntervalMillis > 0)
+            this.readMetrics = new ReadMetricsRecorder(config.metricsIntervalMillis);
+        else
+            this.readMetrics = null;
+        if (config.writeRateBytesPerSecond > 0) {
+            int burst = config.writeBurstBytes > 0 ? config.writeBurstBytes
+                    : (int) Math.max(1, Math.min(Integer.MAX_VALUE, config.writeRateBytesPerSecond / 10));
+            this.writeRateLimiter = new WriteRateLimiter(config.writeRateBytesPerSecond, burst);
+        } else {
+            this.writeRateLimiter = null;
+        }
+        if (config.writeTimeoutMillis > 0 || config.writeChunkTimeoutMillis > 0)
+            this.watchedWrites = new LinkedList<>();
+        else
+            this.watchedWrites = null;
+    }
+
+    private static FrameDecoder createDefaultFrameDecoder(BluetoothConfiguration config) {
+        if (config.delimiterBytes != null && config.delimiterBytes.length > 0) {
+            int maxFrameSize = config.maxFrameSize > 0 ? config.maxFrameSize : config.bufferSize - 1;
+            return new DelimiterFrameDecoder(config.delimiterBytes, config.bufferSize, maxFrameSize);
+        }
+        if (config.maxFrameSize > 0)
+            return new DelimiterFrameDecoder((byte) config.characterDelimiter, config.bufferSize, config.maxFrameSize);
+        return new DelimiterFrameDecoder((byte) config.characterDelimiter, config.bufferSize);
     }
 
     public void setOnEventCallback(OnBluetoothEventCallback onEventCallback) {
@@ -65,14 +205,94 @@ public abstract class BluetoothService {
         this.onScanCallback = onScanCallback;
     }
 
+    /**
+     * When set, the received frames are delivered to this callback instead of
+     * {@link OnBluetoothEventCallback#onDataRead(byte[], int)}.
+     */
+    public void setOnFrameCallback(OnBluetoothFrameCallback onFrameCallback) {
+        this.onFrameCallback = onFrameCallback;
+    }
+
+    /**
+     * When set and {@link BluetoothConfiguration#readBatchMaxFrames} is greater than 0, each batch
+     * of received frames is delivered to this callback instead of
+     * {@link OnBluetoothEventCallback#onDataRead(byte[], int)}.
+     */
+    public void setOnReadBatchCallback(OnBluetoothReadBatchCallback onReadBatchCallback) {
+        this.onReadBatchCallback = onReadBatchCallback;
+    }
+
+    /**
+     * When set, the received frames are delivered to this callback, without copy, instead of the
+     * other read callbacks. It is called in the thread that reads the data, even if
+     * {@link BluetoothConfiguration#callListenersInMainThread} is true, except for the bytes flushed
+     * by the idle timeout of a {@link RawFrameDecoder}, which are delivered from the main thread.
+     * The calls never overlap.
+     */
+    public void setOnBufferCallback(OnBluetoothBufferCallback onBufferCallback) {
+        this.onBufferCallback = onBufferCallback;
+    }
+
+    /**
+     * Receives the {@link ReadMetrics} every {@link BluetoothConfiguration#metricsIntervalMillis}
+     * while data is received.
+     */
+    public void setOnMetricsCallback(OnBluetoothMetricsCallback onMetricsCallback) {
+        this.onMetricsCallback = onMetricsCallback;
+    }
+
+    /**
+     * Called when a chunk of bytes is not accepted by the device within
+     * {@link BluetoothConfiguration#writeChunkTimeoutMillis}.
+     */
+    public void setOnWriteStallCallback(OnBluetoothWriteStallCallback onWriteStallCallback) {
+        this.onWriteStallCallback = onWriteStallCallback;
+    }
+
     public BluetoothConfiguration getConfiguration() {
         return mConfig;
     }
 
+    /**
+     * The pool of received frames, or null if {@link BluetoothConfiguration#framePoolSize} is 0.
+     */
+    public FramePool getFramePool() {
+        return framePool;
+    }
+
+    /**
+     * Number of received frames discarded by the {@link BluetoothConfiguration#readOverflowPolicy}.
+     */
+    public long getDroppedFrames() {
+        return readQueue != null ? readQueue.getDroppedFrames() : 0;
+    }
+
+    /**
+     * Number of received frames, or batches, waiting to be delivered to the main thread.
+     */
+    public int getPendingReads() {
+        return readQueue != null ? readQueue.size() : 0;
+    }
+
+    /**
+     * The limiter pacing the writes, with the time spent throttled, or null if
+     * {@link BluetoothConfiguration#writeRateBytesPerSecond} is not set.
+     */
+    public WriteRateLimiter getWriteRateLimiter() {
+        return writeRateLimiter;
+    }
+
     protected synchronized void updateState(final BluetoothStatus status) {
         Log.v(TAG, "updateStatus() " + mStatus + " -> " + status);
         mStatus = status;
 
+        if (watchedWrites != null) {
+            handler.removeCallbacks(writeWatchdog);
+            chunkStartedAt = 0;
+            if (status == BluetoothStatus.CONNECTED)
+                handler.postDelayed(writeWatchdog, getWatchdogInterval());
+        }
+
         // Give the new state to the Handler so the UI Activity can update
         if (onEventCallback != null)
             runOnMainThread(new Runnable() {
@@ -83,6 +303,265 @@ public abstract class BluetoothService {
             });
     }
 
+    /**
+     * Passes the bytes received from the device to the {@link FrameDecoder}, which calls the
+     * {@link OnBluetoothEventCallback#onDataRead(byte[], int)} for each complete frame.
+     */
+    protected void decodeData(byte[] data, int offset, int length) {
+        decoderLock.lock();
+        try {
+            if (readMetrics != null) {
+                readNanos = System.nanoTime();
+                readMetrics.recordBytes(length);
+            }
+
+            frameDecoder.decode(data, offset, length, frameListener);
+            endOfRead();
+
+            if (readMetrics != null)
+                pollReadMetrics();
+
+            if (frameDecoder instanceof RawFrameDecoder) {
+                RawFrameDecoder rawDecoder = (RawFrameDecoder) frameDecoder;
+                if (rawDecoder.getIdleFlushMillis() > 0) {
+                    // Restart the idle period.
+                    handler.removeCallbacks(idleFlush);
+                    if (rawDecoder.hasPendingBytes())
+                        handler.postDelayed(idleFlush, rawDecoder.getIdleFlushMillis());
+                }
+            }
+        } finally {
+            decoderLock.unlock();
+        }
+    }
+
+    /**
+     * Delivers the frames batched during the read, unless they wait for the batch window.
+     */
+    private void endOfRead() {
+        if (mConfig.readBatchMaxFrames > 0
+                && (mConfig.readBatchWindowMillis <= 0 || !mConfig.callListenersInMainThread))
+            flushReadBatch();
+    }
+
+    /**
+     * Discards any partial frame kept by the {@link FrameDecoder}.
+     */
+    protected void resetFrameDecoder() {
+        decoderLock.lock();
+        try {
+            handler.removeCallbacks(idleFlush);
+            frameDecoder.reset();
+        } finally {
+            decoderLock.unlock();
+        }
+    }
+
+    private void pollReadMetrics() {
+        final ReadMetrics metrics = readMetrics.poll(System.nanoTime());
+        if (metrics != null && onMetricsCallback != null)
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    onMetricsCallback.onReadMetrics(metrics);
+                }
+            });
+    }
+
+    private void recordDispatchLag(long readNanos) {
+        if (readMetrics != null && readNanos != 0)
+            readMetrics.recordDispatchLag(readNanos);
+    }
+
+    private void dispatchFrame(byte[] buffer, int offset, int length, boolean fragment) {
+        final boolean batch = mConfig.readBatchMaxFrames > 0;
+        final long frameReadNanos = readNanos;
+        if (readMetrics != null)
+            readMetrics.recordFrame(length);
+        OnBluetoothBufferCallback bufferCallback = onBufferCallback;
+        if (bufferCallback != null) {
+            recordDispatchLag(frameReadNanos);
+            bufferCallback.onDataRead(viewOf(buffer, offset, length), fragment);
+        } else if (onFrameCallback != null) {
+            final BluetoothFrame frame;
+            if (framePool != null)
+                frame = framePool.acquire(buffer, offset, length);
+            else
+                frame = BluetoothFrame.copyOf(buffer, offset, length);
+            frame.fragment = fragment;
+            frame.readNanos = frameReadNanos;
+            if (batch) {
+                addToReadBatch(null, frame, frameReadNanos);
+                return;
+            }
+            if (useReadQueue()) {
+                enqueueRead(frame, frameReadNanos);
+                return;
+            }
+            if (frame.delivery == null)
+                frame.delivery = new Runnable() {
+                    @Override
+                    public void run() {
+                        deliverFrame(frame);
+                    }
+                };
+            runOnMainThread(frame.delivery);
+        } else if (onEventCallback != null || (batch && onReadBatchCallback != null)) {
+            final byte[] data = new byte[length];
+            System.arraycopy(buffer, offset, data, 0, length);
+            if (batch) {
+                addToReadBatch(data, null, frameReadNanos);
+                return;
+            }
+            if (useReadQueue()) {
+                enqueueRead(data, frameReadNanos);
+                return;
+            }
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    recordDispatchLag(frameReadNanos);
+                    onEventCallback.onDataRead(data, data.length);
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns a read-only view over the frame, reusing the view created for the same array.
+     */
+    private ByteBuffer viewOf(byte[] buffer, int offset, int length) {
+        if (buffer != viewArray) {
+            if (buffer == previousViewArray) {
+                previousViewArray = viewArray;
+                viewArray = buffer;
+                ByteBuffer temp = previousView;
+                previousView = view;
+                view = temp;
+            } else {
+                previousViewArray = viewArray;
+                previousView = view;
+                viewArray = buffer;
+                view = ByteBuffer.wrap(buffer).asReadOnlyBuffer();
+            }
+        }
+        view.clear();
+        view.limit(offset + length);
+        view.position(offset);
+        view.order(ByteOrder.BIG_ENDIAN);
+        return view;
+    }
+
+    private void deliverFrame(BluetoothFrame frame) {
+        OnBluetoothFrameCallback callback = onFrameCallback;
+        recordDispatchLag(frame.readNanos);
+        if (callback != null)
+            callback.onFrameRead(frame);
+        else
+            frame.release();
+    }
+
+    private void addToReadBatch(byte[] data, BluetoothFrame frame, long frameReadNanos) {
+        ReadBatch full = null;
+        synchronized (batchLock) {
+            if (readBatch == null) {
+                readBatch = new ReadBatch(mConfig.readBatchMaxFrames);
+                readBatch.readNanos = frameReadNanos;
+            }
+            if (data != null)
+                readBatch.data.add(data);
+            else
+                readBatch.frames.add(frame);
+
+            if (readBatch.size() >= mConfig.readBatchMaxFrames) {
+                full = takeReadBatch();
+            } else if (!readBatchScheduled && mConfig.readBatchWindowMillis > 0 && mConfig.callListenersInMainThread) {
+                readBatchScheduled = true;
+                runOnMainThread(readBatchTimeout, mConfig.readBatchWindowMillis);
+            }
+        }
+        if (full != null)
+            postReadBatch(full);
+    }
+
+    private void flushReadBatch() {
+        ReadBatch batch;
+        synchronized (batchLock) {
+            batch = takeReadBatch();
+        }
+        if (batch != null)
+            postReadBatch(batch);
+    }
+
+    /**
+     * Must be called holding the batchLock.
+     */
+    private ReadBatch takeReadBatch() {
+        ReadBatch batch = readBatch;
+        readBatch = null;
+        if (readBatchScheduled) {
+            readBatchScheduled = false;
+            removeRunnableFromHandler(readBatchTimeout);
+        }
+        return batch != null && batch.size() > 0 ? batch : null;
+    }
+
+    private void postReadBatch(final ReadBatch batch) {
+        if (useReadQueue()) {
+            enqueueRead(batch, batch.readNanos);
+            return;
+        }
+        runOnMainThread(new Runnable() {
+            @Override
+            public void run() {
+                deliverReadBatch(batch);
+            }
+        });
+    }
+
+    private boolean useReadQueue() {
+        return readQueue != null && mConfig.callListenersInMainThread;
+    }
+
+    /**
+     * Adds a byte[], {@link BluetoothFrame} or {@link ReadBatch} to the read queue and schedules
+     * the delivery if none is pending.
+     */
+    private void enqueueRead(Object item, long itemReadNanos) {
+        if (readQueue.offer(item, itemReadNanos))
+            runOnMainThread(readQueueDrain);
+    }
+
+    private void deliverReadItem(Object item, long itemReadNanos) {
+        if (item instanceof BluetoothFrame) {
+            deliverFrame((BluetoothFrame) item);
+        } else if (item instanceof ReadBatch) {
+            deliverReadBatch((ReadBatch) item);
+        } else if (onEventCallback != null) {
+            recordDispatchLag(itemReadNanos);
+            byte[] data = (byte[]) item;
+            onEventCallback.onDataRead(data, data.length);
+        }
+    }
+
+    private void deliverReadBatch(ReadBatch batch) {
+        for (int i = 0; i < batch.frames.size(); i++) {
+            deliverFrame(batch.frames.get(i));
+        }
+        if (batch.data.isEmpty())
+            return;
+        recordDispatchLag(batch.readNanos);
+        OnBluetoothReadBatchCallback batchCallback = onReadBatchCallback;
+        if (batchCallback != null) {
+            batchCallback.onDataReadBatch(batch.data);
+        } else if (onEventCallback != null) {
+            for (int i = 0; i < batch.data.size(); i++) {
+                byte[] data = batch.data.get(i);
+                onEventCallback.onDataRead(data, data.length);
+            }
+        }
+    }
+
     protected void runOnMainThread(final Runnable runnable, final long delayMillis) {
         if (mConfig.callListenersInMainThread) {
             if (delayMillis > 0) {
@@ -151,7 +630,211 @@ public abstract class BluetoothService {
     /**
      * Write a array of bytes to the connected device.
      */
-    public abstract void write(byte[] bytes);
+    public void write(byte[] bytes) {
+        write(bytes, false);
+    }
+
+    /**
+     * Write a array of bytes to the connected device.
+     * When flush is true, the bytes are sent without waiting for
+     * {@link BluetoothConfiguration#writeLingerMillis}, along with the bytes coalesced before them.
+     * Services that do not coalesce writes ignore the flag.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     */
+    public WriteFuture write(byte[] bytes, boolean flush) {
+        return write(bytes, flush, WritePriority.BULK);
+    }
+
+    /**
+     * Write a array of bytes to the connected device in the lane of the priority.
+     * {@link WritePriority#CONTROL} writes are sent before the pending {@link WritePriority#BULK} writes,
+     * between the chunks of the bulk write in progress.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     * @see BluetoothConfiguration#writeChunkSize
+     */
+    public abstract WriteFuture write(byte[] bytes, boolean flush, WritePriority priority);
+
+    /**
+     * Write length bytes of the array, starting at offset, to the connected device.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     */
+    public WriteFuture write(byte[] bytes, int offset, int length) {
+        return write(new ByteBuffer[]{ByteBuffer.wrap(bytes, offset, length)}, false, WritePriority.BULK);
+    }
+
+    /**
+     * Write the arrays to the connected device as a single write, without concatenating them.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     */
+    public WriteFuture write(byte[]... buffers) {
+        ByteBuffer[] wrapped = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+            wrapped[i] = ByteBuffer.wrap(buffers[i]);
+        return write(wrapped, false, WritePriority.BULK);
+    }
+
+    /**
+     * Write lengths[i] bytes of each array, starting at offsets[i], to the connected device as a single write.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     */
+    public WriteFuture write(byte[][] buffers, int[] offsets, int[] lengths) {
+        if (offsets.length != buffers.length || lengths.length != buffers.length)
+            throw new IllegalArgumentException("buffers, offsets and lengths must have the same length");
+        ByteBuffer[] wrapped = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+            wrapped[i] = ByteBuffer.wrap(buffers[i], offsets[i], lengths[i]);
+        return write(wrapped, false, WritePriority.BULK);
+    }
+
+    /**
+     * Write the remaining bytes of the buffers to the connected device as a single write.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     * @see #write(ByteBuffer[], boolean, WritePriority)
+     */
+    public WriteFuture write(ByteBuffer... buffers) {
+        return write(buffers, false, WritePriority.BULK);
+    }
+
+    /**
+     * Write the remaining bytes of the buffers to the connected device as a single write, without
+     * concatenating them. The positions of the buffers are not changed, and their content must not be
+     * changed until the write completes. {@link OnBluetoothEventCallback#onDataWrite(byte[])} is not
+     * called for these writes.
+     *
+     * @return a {@link WriteFuture} completed when the bytes are sent
+     */
+    public abstract WriteFuture write(ByteBuffer[] buffers, boolean flush, WritePriority priority);
+
+    /**
+     * Completes the write and calls its listeners, a null cause means success.
+     */
+    protected void completeWrite(final WriteFuture future, Throwable cause) {
+        if (future == null)
+            return;
+        final List<WriteFuture.Listener> listeners = future.complete(cause);
+        if (listeners != null)
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < listeners.size(); i++)
+                        listeners.get(i).onWriteComplete(future);
+                }
+            });
+    }
+
+    /**
+     * Creates the {@link WriteFuture} of a new write, checked by the watchdog when a write timeout is configured.
+     */
+    protected WriteFuture newWriteFuture() {
+        WriteFuture future = new WriteFuture();
+        if (watchedWrites != null) {
+            if (mConfig.writeTimeoutMillis > 0)
+                future.deadline = SystemClock.uptimeMillis() + mConfig.writeTimeoutMillis;
+            synchronized (watchedWrites) {
+                watchedWrites.add(future);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Marks the start of a chunk of bytes given to the device, checked against
+     * {@link BluetoothConfiguration#writeChunkTimeoutMillis}.
+     */
+    protected void beginWriteChunk() {
+        chunkStartedAt = SystemClock.uptimeMillis();
+    }
+
+    /**
+     * Marks the end of the chunk started by {@link #beginWriteChunk()}.
+     */
+    protected void endWriteChunk() {
+        chunkStartedAt = 0;
+    }
+
+    /**
+     * Called by the watchdog when the link stalls, after the pending writes have failed, so the
+     * service can drop the writes in progress.
+     */
+    protected void onWriteStall() {
+    }
+
+    private long getWatchdogInterval() {
+        long timeout = Long.MAX_VALUE;
+        if (mConfig.writeTimeoutMillis > 0)
+            timeout = mConfig.writeTimeoutMillis;
+        if (mConfig.writeChunkTimeoutMillis > 0)
+            timeout = Math.min(timeout, mConfig.writeChunkTimeoutMillis);
+        return Math.max(1, timeout / 2);
+    }
+
+    private void checkWrites() {
+        final long now = SystemClock.uptimeMillis();
+        final long started = chunkStartedAt;
+        if (mConfig.writeChunkTimeoutMillis > 0 && started != 0 && now - started > mConfig.writeChunkTimeoutMillis) {
+            final long stalledMillis = now - started;
+            chunkStartedAt = 0;
+            Log.w(TAG, "Write stalled for " + stalledMillis + " ms");
+            failWatchedWrites(new WriteTimeoutException("Link stalled for " + stalledMillis + " ms"), Long.MAX_VALUE);
+            onWriteStall();
+            if (onWriteStallCallback != null)
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onWriteStallCallback.onWriteStall(stalledMillis);
+                    }
+                });
+            if (mConfig.disconnectOnWriteStall)
+                disconnect();
+            return;
+        }
+        failWatchedWrites(null, now);
+    }
+
+    /**
+     * Fails the watched writes past their deadline, or every pending write when the deadline is
+     * Long.MAX_VALUE, and forgets the completed ones.
+     *
+     * @param cause the failure, or null for a {@link WriteTimeoutException} of the write timeout
+     */
+    private void failWatchedWrites(WriteTimeoutException cause, long now) {
+        List<WriteFuture> expired = null;
+        synchronized (watchedWrites) {
+            Iterator<WriteFuture> iterator = watchedWrites.iterator();
+            while (iterator.hasNext()) {
+                WriteFuture future = iterator.next();
+                if (future.isDone()) {
+                    iterator.remove();
+                } else if (now == Long.MAX_VALUE || (future.deadline != 0 && now >= future.deadline)) {
+                    iterator.remove();
+                    if (expired == null)
+                        expired = new ArrayList<>();
+                    expired.add(future);
+                }
+            }
+        }
+        if (expired == null)
+            return;
+        if (cause == null)
+            cause = new WriteTimeoutException("Write timed out after " + mConfig.writeTimeoutMillis + " ms");
+        for (int i = 0; i < expired.size(); i++)
+            completeWrite(expired.get(i), cause);
+    }
+
+    /**
+     * Creates a {@link WriteFuture} already failed with the cause.
+     */
+    protected WriteFuture failedWrite(Throwable cause) {
+        WriteFuture future = new WriteFuture();
+        future.complete(cause);
+        return future;
+    }
 
     /**
      * Stops the BluetoothService and turn it unusable.
@@ -231,6 +914,48 @@ public abstract class BluetoothService {
         void onDataWrite(byte[] buffer);
     }
 
+    public interface OnBluetoothFrameCallback {
+        /**
+         * Called for each received frame. The frame must be released with
+         * {@link BluetoothFrame#release()} when its data is no longer used.
+         */
+        void onFrameRead(BluetoothFrame frame);
+    }
+
+    public interface OnBluetoothReadBatchCallback {
+        /**
+         * Called with the frames received since the last batch, in the order they were received.
+         */
+        void onDataReadBatch(List<byte[]> frames);
+    }
+
+    public interface OnBluetoothBufferCallback {
+        /**
+         * Called for each received frame, which is between the position and the limit of the buffer.
+         * The buffer is a read-only view over the decoder data and is only valid until this method
+         * returns, so it must not be kept.
+         *
+         * @param fragment true if the received frame exceeds the maximum frame size and continues
+         *                 in the next call, the last part is delivered with false
+         */
+        void onDataRead(ByteBuffer buffer, boolean fragment);
+    }
+
+    public interface OnBluetoothWriteStallCallback {
+        /**
+         * Called when the device has not accepted a chunk of bytes for stalledMillis, after the
+         * pending writes have failed.
+         */
+        void onWriteStall(long stalledMillis);
+    }
+
+    public interface OnBluetoothMetricsCallback {
+        /**
+         * Called with the statistics of the data received during the last interval.
+         */
+        void onReadMetrics(ReadMetrics metrics);
+    }
+
     public interface OnBluetoothScanCallback {
         void onDeviceDiscovered(BluetoothDevice device, int rssi);
 
@@ -21,30 +21,243 @@
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
  * SOFTWARE.
  */
-
 package com.github.douglasjunior.bluetoothclassiclibrary;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes text and numbers to the {@link BluetoothService}, one write per call. <br/>
+ * The characters are encoded in reusable buffers with a cached {@link CharsetEncoder}, and the integers
+ * are formatted digit by digit into those buffers, so the only array allocated per message is the one
+ * given to the service, which keeps it in the write queue and reports it to onDataWrite. The doubles
+ * are formatted by the platform, see {@link #write(double)}.
+ */
 public class BluetoothWriter {
     private final BluetoothService service;
+    private final CharsetEncoder encoder;
+    // Whether the charset encodes the ASCII characters as single bytes, so they can be copied directly.
+    private final boolean asciiCompatible;
+    // The delimiter of the configuration, resolved by the first writeln
+    private boolean delimiterResolved;
+    private byte[] delimiter;
+    private char characterDelimiter;
+
+    private byte[] buffer = new byte[64];
+    private ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+    private int count;
+    private char[] chars = new char[64];
+    private CharBuffer charBuffer = CharBuffer.wrap(chars);
+    private final StringBuilder builder = new StringBuilder(32);
 
     public BluetoothWriter(BluetoothService service) {
+        this(service, Charset.defaultCharset());
+    }
+
+    public BluetoothWriter(BluetoothService service, Charset charset) {
         this.service = service;
+        this.encoder = charset.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        String name = charset.name();
+        this.asciiCompatible = "UTF-8".equals(name) || "US-ASCII".equals(name) || "ISO-8859-1".equals(name);
+    }
+
+    public synchronized void write(String msg) {
+        send(putString(msg), false);
+    }
+
+    public synchronized void write(int number) {
+        send(putLong(number), false);
     }
 
-    public void write(String msg) {
-        if (service != null)
-            service.write(msg.getBytes());
+    public synchronized void write(long number) {
+        send(putLong(number), false);
+    }
+
+    /**
+     * Writes the number as {@link Double#toString(double)} does. Unlike the integers, the digits are
+     * produced by {@link StringBuilder#append(double)} into a reused builder, which may allocate
+     * internally depending on the Android version.
+     */
+    public synchronized void write(double number) {
+        send(putDouble(number), false);
+    }
+
+    public synchronized void write(char c) {
+        send(putChar(c), false);
     }
 
     public void write(Integer number) {
-        write(number.toString());
+        write(number.intValue());
+    }
+
+    public void write(Character c) {
+        write(c.charValue());
+    }
+
+    /**
+     * Writes the message followed by the delimiter of the {@link BluetoothConfiguration}.
+     */
+    public synchronized void writeln(String msg) {
+        send(putString(msg), true);
+    }
+
+    public synchronized void writeln(int number) {
+        send(putLong(number), true);
+    }
+
+    public synchronized void writeln(long number) {
+        send(putLong(number), true);
+    }
+
+    public synchronized void writeln(double number) {
+        send(putDouble(number), true);
+    }
+
+    public synchronized void writeln(char c) {
+        send(putChar(c), true);
+    }
+
+    /**
+     * Encodes the first length characters of the chars array, followed by the delimiter when delimited,
+     * and writes them to the service. The characters and a character delimiter are encoded in a single
+     * pass, so a charset with a byte order mark such as UTF-16 writes it once per message.
+     */
+    private void send(int length, boolean delimited) {
+        byte[] delimiterBytes = null;
+        if (delimited) {
+            resolveDelimiter();
+            if (delimiter != null) {
+                delimiterBytes = delimiter;
+            } else {
+                ensureChars(length + 1);
+                chars[length++] = characterDelimiter;
+            }
+        }
+        appendChars(length);
+        if (delimiterBytes != null) {
+            ensureBytes(count + delimiterBytes.length);
+            System.arraycopy(delimiterBytes, 0, buffer, count, delimiterBytes.length);
+            count += delimiterBytes.length;
+        }
+        if (service != null) {
+            byte[] message = new byte[count];
+            System.arraycopy(buffer, 0, message, 0, count);
+            service.write(message);
+        }
+        count = 0;
+    }
+
+    private int putString(String msg) {
+        int length = msg.length();
+        ensureChars(length);
+        msg.getChars(0, length, chars, 0);
+        return length;
+    }
+
+    private int putChar(char c) {
+        chars[0] = c;
+        return 1;
+    }
+
+    private int putLong(long value) {
+        // Digits are written backwards from the end of the chars, the longest value has 20 characters
+        int position = chars.length;
+        boolean negative = value < 0;
+        if (!negative)
+            value = -value;
+        do {
+            chars[--position] = (char) ('0' - value % 10);
+            value /= 10;
+        } while (value != 0);
+        if (negative)
+            chars[--position] = '-';
+        int length = chars.length - position;
+        System.arraycopy(chars, position, chars, 0, length);
+        return length;
+    }
+
+    /**
+     * The shortest digits that read back as the same double are not computed here, the platform
+     * formatting is used and then copied to the chars.
+     */
+    private int putDouble(double value) {
+        builder.setLength(0);
+        builder.append(value);
+        int length = builder.length();
+        ensureChars(length);
+        builder.getChars(0, length, chars, 0);
+        return length;
+    }
+
+    private void resolveDelimiter() {
+        if (delimiterResolved)
+            return;
+        BluetoothConfiguration config = service != null ? service.getConfiguration() : null;
+        if (config != null && config.delimiterBytes != null && config.delimiterBytes.length > 0)
+            delimiter = config.delimiterBytes;
+        else
+            characterDelimiter = config != null ? config.characterDelimiter : '\n';
+        delimiterResolved = true;
+    }
+
+    /**
+     * Encodes the first length characters of the chars array to the buffer.
+     */
+    private void appendChars(int length) {
+        if (asciiCompatible) {
+            ensureBytes(count + length);
+            int i = 0;
+            while (i < length && chars[i] < 0x80) {
+                buffer[count + i] = (byte) chars[i];
+                i++;
+            }
+            if (i == length) {
+                count += length;
+                return;
+            }
+        }
+        charBuffer.clear();
+        charBuffer.limit(length);
+        byteBuffer.clear();
+        byteBuffer.position(count);
+        encoder.reset();
+        boolean flushing = false;
+        while (true) {
+            CoderResult result = flushing ? encoder.flush(byteBuffer) : encoder.encode(charBuffer, byteBuffer, true);
+            if (result.isOverflow()) {
+                count = byteBuffer.position();
+                ensureBytes(buffer.length + 1);
+                byteBuffer.position(count);
+            } else if (!flushing) {
+                flushing = true;
+            } else {
+                break;
+            }
+        }
+        count = byteBuffer.position();
     }
 
-    public void writeln(String msg) {
-        write(msg + service.getConfiguration().characterDelimiter);
+    private void ensureBytes(int capacity) {
+        if (capacity <= buffer.length)
+            return;
+        byte[] grown = new byte[Math.max(capacity, buffer.length * 2)];
+        System.arraycopy(buffer, 0, grown, 0, count);
+        buffer = grown;
+        byteBuffer = ByteBuffer.wrap(buffer);
     }
 
-    public void write(Character c){
-        write(c.toString());
+    private void ensureChars(int capacity) {
+        if (capacity <= chars.length)
+            return;
+        char[] grown = new char[Math.max(capacity, chars.length * 2)];
+        System.arraycopy(chars, 0, grown, 0, chars.length);
+        chars = grown;
+        charBuffer = CharBuffer.wrap(chars);
     }
 }
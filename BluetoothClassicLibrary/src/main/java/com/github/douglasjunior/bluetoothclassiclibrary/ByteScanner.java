@@ -0,0 +1,74 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Searches a byte array for a single byte value, comparing 8 bytes per step (SWAR). The words are
+ * assembled from the array, so scanning a new array (every BLE notification) allocates nothing.
+ */
+final class ByteScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * Returns the index of the first occurrence of the value between fromIndex (inclusive)
+     * and toIndex (exclusive), or -1 if it is not present.
+     */
+    int indexOf(byte[] array, int fromIndex, int toIndex, byte value) {
+        int i = fromIndex;
+        if (toIndex - fromIndex >= 8) {
+            final long pattern = (value & 0xFFL) * ONES;
+            for (; i + 8 <= toIndex; i += 8) {
+                // Bytes equal to the value become zero, then the lowest zero byte is located.
+                long word = readLong(array, i) ^ pattern;
+                long found = (word - ONES) & ~word & HIGHS;
+                if (found != 0) {
+                    return i + (Long.numberOfTrailingZeros(found) >>> 3);
+                }
+            }
+        }
+        for (; i < toIndex; i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Reads 8 bytes in little-endian order, so the lowest byte of the word is the first of the array.
+     */
+    private static long readLong(byte[] array, int index) {
+        return (array[index] & 0xFFL)
+                | (array[index + 1] & 0xFFL) << 8
+                | (array[index + 2] & 0xFFL) << 16
+                | (array[index + 3] & 0xFFL) << 24
+                | (array[index + 4] & 0xFFL) << 32
+                | (array[index + 5] & 0xFFL) << 40
+                | (array[index + 6] & 0xFFL) << 48
+                | (array[index + 7] & 0xFFL) << 56;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import android.util.Log;
+
+/**
+ * Frames encoded with COBS (Consistent Overhead Byte Stuffing) and terminated by a zero byte.
+ * Empty frames are ignored, and malformed frames or frames longer than maxFrameLength are
+ * discarded up to the next zero byte.
+ */
+public class CobsFrameDecoder implements FrameDecoder {
+
+    private static final String TAG = CobsFrameDecoder.class.getSimpleName();
+
+    private final byte[] buffer;
+    private int bufferIndex = 0;
+    // Data bytes left in the current block, zero when the next byte is a code byte.
+    private int blockRemaining = 0;
+    // Whether a zero must be written before the next block.
+    private boolean pendingZero = false;
+    private boolean discarding = false;
+
+    public CobsFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength < 1)
+            throw new IllegalArgumentException("maxFrameLength must be positive: " + maxFrameLength);
+        this.buffer = new byte[maxFrameLength];
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        for (int i = offset; i < limit; i++) {
+            final byte value = data[i];
+            if (value == 0) {
+                if (blockRemaining != 0 && !discarding)
+                    Log.w(TAG, "Discarding truncated frame");
+                else if (!discarding && bufferIndex > 0)
+                    listener.onFrame(buffer, 0, bufferIndex, false);
+                reset();
+                continue;
+            }
+            if (discarding)
+                continue;
+
+            if (blockRemaining == 0) {
+                if (pendingZero && !append((byte) 0))
+                    continue;
+                final int code = value & 0xFF;
+                blockRemaining = code - 1;
+                pendingZero = code != 0xFF;
+            } else {
+                if (!append(value))
+                    continue;
+                blockRemaining--;
+            }
+        }
+    }
+
+    private boolean append(byte value) {
+        if (bufferIndex == buffer.length) {
+            Log.w(TAG, "Discarding frame longer than " + buffer.length + " bytes");
+            discarding = true;
+            return false;
+        }
+        buffer[bufferIndex++] = value;
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        bufferIndex = 0;
+        blockRemaining = 0;
+        pendingZero = false;
+        discarding = false;
+    }
+}
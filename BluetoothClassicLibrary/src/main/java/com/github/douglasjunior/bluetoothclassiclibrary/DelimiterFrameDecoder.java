@@ -0,0 +1,210 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Frames terminated by a delimiter of one or more bytes, like "\r\n". Empty frames are ignored. <br/>
+ * The delimiter is matched with a KMP automaton that keeps its state between calls, so a
+ * delimiter split across reads or notifications is found without going back over the data. <br/>
+ * The buffer starts with initialBufferSize bytes and grows up to maxFrameSize. A frame longer
+ * than maxFrameSize is dispatched in fragments of maxFrameSize bytes, flagged as fragment
+ * except for the last one. <br/>
+ * This is the default decoder, built from {@link BluetoothConfiguration#characterDelimiter}
+ * (or {@link BluetoothConfiguration#delimiterBytes}), {@link BluetoothConfiguration#bufferSize}
+ * and {@link BluetoothConfiguration#maxFrameSize}.
+ */
+public class DelimiterFrameDecoder implements FrameDecoder {
+
+    private final byte[] delimiter;
+    // Transitions of the KMP automaton, indexed by state * 256 + byte, only for multi-byte delimiters.
+    private final int[] transitions;
+    private final int initialBufferSize;
+    private final int maxFrameSize;
+    // The last delimiter.length - 1 bytes of the buffer may be the beginning of a delimiter.
+    private final int bufferLimit;
+    private final ByteScanner scanner = new ByteScanner();
+    private byte[] buffer;
+    private int bufferIndex = 0;
+    private int matched = 0;
+
+    /**
+     * Frames up to bufferSize - 1 bytes, with a buffer that does not grow.
+     */
+    public DelimiterFrameDecoder(byte delimiter, int bufferSize) {
+        this(delimiter, bufferSize - 1, bufferSize - 1);
+    }
+
+    /**
+     * @param delimiter         the byte that ends each frame
+     * @param initialBufferSize the initial size of the buffer
+     * @param maxFrameSize      the maximum size of a frame, longer frames are fragmented
+     */
+    public DelimiterFrameDecoder(byte delimiter, int initialBufferSize, int maxFrameSize) {
+        this(new byte[]{delimiter}, initialBufferSize, maxFrameSize);
+    }
+
+    /**
+     * @param delimiter         the bytes that end each frame
+     * @param initialBufferSize the initial size of the buffer
+     * @param maxFrameSize      the maximum size of a frame, longer frames are fragmented
+     */
+    public DelimiterFrameDecoder(byte[] delimiter, int initialBufferSize, int maxFrameSize) {
+        if (delimiter == null || delimiter.length == 0)
+            throw new IllegalArgumentException("delimiter must not be empty");
+        if (maxFrameSize < 1)
+            throw new IllegalArgumentException("maxFrameSize must be positive: " + maxFrameSize);
+        if (initialBufferSize < 1)
+            throw new IllegalArgumentException("initialBufferSize must be positive: " + initialBufferSize);
+        this.delimiter = delimiter.clone();
+        this.transitions = delimiter.length > 1 ? buildTransitions(this.delimiter) : null;
+        this.maxFrameSize = maxFrameSize;
+        this.bufferLimit = maxFrameSize + delimiter.length - 1;
+        this.initialBufferSize = Math.min(initialBufferSize, bufferLimit);
+        this.buffer = new byte[this.initialBufferSize];
+    }
+
+    private static int[] buildTransitions(byte[] delimiter) {
+        final int length = delimiter.length;
+        int[] transitions = new int[length * 256];
+        transitions[delimiter[0] & 0xFF] = 1;
+        for (int restart = 0, state = 1; state < length; state++) {
+            System.arraycopy(transitions, restart * 256, transitions, state * 256, 256);
+            transitions[state * 256 + (delimiter[state] & 0xFF)] = state + 1;
+            restart = transitions[restart * 256 + (delimiter[state] & 0xFF)];
+        }
+        return transitions;
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        if (transitions == null)
+            decodeSingle(data, offset, length, listener);
+        else
+            decodeMulti(data, offset, length, listener);
+    }
+
+    private void decodeSingle(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        final byte value = delimiter[0];
+        int start = offset;
+        while (start < limit) {
+            int end = scanner.indexOf(data, start, limit, value);
+            if (end < 0) {
+                append(data, start, limit, listener);
+                break;
+            }
+            endFrame(data, start, end + 1, listener);
+            start = end + 1;
+        }
+    }
+
+    private void decodeMulti(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        final int[] transitions = this.transitions;
+        final int delimiterLength = delimiter.length;
+        final byte first = delimiter[0];
+        int state = matched;
+        int start = offset;
+        int i = offset;
+        while (i < limit) {
+            if (state == 0) {
+                // Outside of a match only the first delimiter byte matters.
+                i = scanner.indexOf(data, i, limit, first);
+                if (i < 0)
+                    break;
+            }
+            state = transitions[state * 256 + (data[i] & 0xFF)];
+            i++;
+            if (state == delimiterLength) {
+                endFrame(data, start, i, listener);
+                state = 0;
+                start = i;
+            }
+        }
+        matched = state;
+        if (start < limit)
+            append(data, start, limit, listener);
+    }
+
+    /**
+     * Dispatches the frame ending with the delimiter just before end. The frame is made of the
+     * buffer and the bytes of data from start, part of the delimiter may be in the buffer.
+     */
+    private void endFrame(byte[] data, int start, int end, FrameListener listener) {
+        int count = end - start - delimiter.length;
+        if (bufferIndex == 0 && count <= maxFrameSize) {
+            // The whole frame is inside data, so it is dispatched without copying.
+            if (count > 0)
+                listener.onFrame(data, start, count, false);
+            return;
+        }
+        if (count >= 0)
+            append(data, start, start + count, listener);
+        else
+            bufferIndex += count;
+
+        while (bufferIndex > maxFrameSize) {
+            listener.onFrame(buffer, 0, maxFrameSize, true);
+            bufferIndex -= maxFrameSize;
+            System.arraycopy(buffer, maxFrameSize, buffer, 0, bufferIndex);
+        }
+        if (bufferIndex > 0) {
+            listener.onFrame(buffer, 0, bufferIndex, false);
+            bufferIndex = 0;
+        }
+    }
+
+    /**
+     * Copies the bytes between from and to into the buffer, growing it when needed and
+     * dispatching a fragment whenever the frame exceeds maxFrameSize bytes.
+     */
+    private void append(byte[] data, int from, int to, FrameListener listener) {
+        while (from < to) {
+            if (bufferIndex == bufferLimit) {
+                // The bytes after maxFrameSize may be part of a delimiter, so they are kept.
+                listener.onFrame(buffer, 0, maxFrameSize, true);
+                bufferIndex -= maxFrameSize;
+                System.arraycopy(buffer, maxFrameSize, buffer, 0, bufferIndex);
+            }
+            if (bufferIndex == buffer.length) {
+                byte[] grown = new byte[(int) Math.min((long) buffer.length * 2, bufferLimit)];
+                System.arraycopy(buffer, 0, grown, 0, bufferIndex);
+                buffer = grown;
+            }
+            int count = Math.min(to - from, buffer.length - bufferIndex);
+            System.arraycopy(data, from, buffer, bufferIndex, count);
+            bufferIndex += count;
+            from += count;
+        }
+    }
+
+    @Override
+    public void reset() {
+        bufferIndex = 0;
+        matched = 0;
+        if (buffer.length > initialBufferSize)
+            buffer = new byte[initialBufferSize];
+    }
+}
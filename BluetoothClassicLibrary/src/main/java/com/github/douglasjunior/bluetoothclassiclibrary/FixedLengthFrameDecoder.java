@@ -0,0 +1,68 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Frames with a constant number of bytes.
+ */
+public class FixedLengthFrameDecoder implements FrameDecoder {
+
+    private final byte[] buffer;
+    private int bufferIndex = 0;
+
+    public FixedLengthFrameDecoder(int frameLength) {
+        if (frameLength < 1)
+            throw new IllegalArgumentException("frameLength must be positive: " + frameLength);
+        this.buffer = new byte[frameLength];
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        int position = offset;
+        while (position < limit) {
+            int remaining = limit - position;
+            if (bufferIndex == 0 && remaining >= buffer.length) {
+                // The whole frame is inside data, so it is dispatched without copying.
+                listener.onFrame(data, position, buffer.length, false);
+                position += buffer.length;
+                continue;
+            }
+            int count = Math.min(remaining, buffer.length - bufferIndex);
+            System.arraycopy(data, position, buffer, bufferIndex, count);
+            bufferIndex += count;
+            position += count;
+            if (bufferIndex == buffer.length) {
+                listener.onFrame(buffer, 0, bufferIndex, false);
+                bufferIndex = 0;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        bufferIndex = 0;
+    }
+}
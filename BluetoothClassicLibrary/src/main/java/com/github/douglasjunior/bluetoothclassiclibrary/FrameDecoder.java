@@ -0,0 +1,61 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Splits the bytes received from the device into frames. <br/>
+ * Implementations are incremental: a frame may arrive split across many calls to
+ * {@link #decode(byte[], int, int, FrameListener)}, and one call may contain many frames.
+ *
+ * @see BluetoothConfiguration#frameDecoder
+ */
+public interface FrameDecoder {
+
+    /**
+     * Consumes the received bytes and calls the listener once for each complete frame.
+     *
+     * @param data     the received bytes
+     * @param offset   the position of the first byte in data
+     * @param length   the number of bytes to consume
+     * @param listener called for each decoded frame
+     */
+    void decode(byte[] data, int offset, int length, FrameListener listener);
+
+    /**
+     * Discards any partially decoded frame. Called when a new connection is established.
+     */
+    void reset();
+
+    interface FrameListener {
+        /**
+         * Called for each decoded frame. The buffer is owned by the decoder and is only valid
+         * until this method returns.
+         *
+         * @param fragment true if the frame exceeds the maximum frame size of the decoder and
+         *                 continues in the next call, the last part is delivered with false
+         */
+        void onFrame(byte[] buffer, int offset, int length, boolean fragment);
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * A bounded pool of {@link BluetoothFrame}, so the received frames can be delivered without
+ * allocating a new array for each one. <br/>
+ * A hit is a frame taken from the pool, a miss is a frame allocated because the pool was empty or
+ * the frame was longer than frameCapacity. Frames larger than frameCapacity are never pooled.
+ *
+ * @see BluetoothConfiguration#framePoolSize
+ */
+public class FramePool {
+
+    private final int frameCapacity;
+    private final BluetoothFrame[] frames;
+    private int size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * @param maxFrames     the maximum number of released frames kept for reuse
+     * @param frameCapacity the size of the array of each pooled frame
+     */
+    public FramePool(int maxFrames, int frameCapacity) {
+        if (maxFrames < 1)
+            throw new IllegalArgumentException("maxFrames must be positive: " + maxFrames);
+        if (frameCapacity < 1)
+            throw new IllegalArgumentException("frameCapacity must be positive: " + frameCapacity);
+        this.frames = new BluetoothFrame[maxFrames];
+        this.frameCapacity = frameCapacity;
+    }
+
+    /**
+     * Takes a frame from the pool, or allocates a new one, and copies the bytes into it.
+     */
+    public BluetoothFrame acquire(byte[] buffer, int offset, int length) {
+        BluetoothFrame frame = null;
+        synchronized (this) {
+            if (length <= frameCapacity && size > 0) {
+                frame = frames[--size];
+                frames[size] = null;
+                hits++;
+            } else {
+                misses++;
+            }
+        }
+        if (frame == null) {
+            if (length <= frameCapacity)
+                frame = new BluetoothFrame(this, frameCapacity);
+            else
+                frame = new BluetoothFrame(null, length);
+        }
+        frame.set(buffer, offset, length);
+        return frame;
+    }
+
+    synchronized void recycle(BluetoothFrame frame) {
+        if (size < frames.length)
+            frames[size++] = frame;
+    }
+
+    /**
+     * Number of frames served from the pool.
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of frames allocated because no pooled frame could be used.
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Number of released frames waiting to be reused.
+     */
+    public synchronized int getAvailable() {
+        return size;
+    }
+
+    public synchronized void resetStatistics() {
+        hits = 0;
+        misses = 0;
+    }
+}
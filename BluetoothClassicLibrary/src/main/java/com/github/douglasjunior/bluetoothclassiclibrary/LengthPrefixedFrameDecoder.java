@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import android.util.Log;
+
+import java.nio.ByteOrder;
+
+/**
+ * Frames preceded by an unsigned length field of 1, 2 or 4 bytes. The length field counts only
+ * the payload, and only the payload is dispatched. Empty frames are ignored and frames longer than
+ * maxFrameLength are discarded.
+ */
+public class LengthPrefixedFrameDecoder implements FrameDecoder {
+
+    private static final String TAG = LengthPrefixedFrameDecoder.class.getSimpleName();
+
+    private final int lengthFieldSize;
+    private final boolean bigEndian;
+    private final byte[] buffer;
+
+    private int headerIndex = 0;
+    private long frameLength = 0;
+    private int bufferIndex = 0;
+    private long bytesToDiscard = 0;
+
+    /**
+     * @param lengthFieldSize the size of the length field, 1, 2 or 4 bytes
+     * @param byteOrder       the byte order of the length field
+     * @param maxFrameLength  the maximum payload length
+     */
+    public LengthPrefixedFrameDecoder(int lengthFieldSize, ByteOrder byteOrder, int maxFrameLength) {
+        if (lengthFieldSize != 1 && lengthFieldSize != 2 && lengthFieldSize != 4)
+            throw new IllegalArgumentException("lengthFieldSize must be 1, 2 or 4: " + lengthFieldSize);
+        if (maxFrameLength < 1)
+            throw new IllegalArgumentException("maxFrameLength must be positive: " + maxFrameLength);
+        this.lengthFieldSize = lengthFieldSize;
+        this.bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+        this.buffer = new byte[maxFrameLength];
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        int position = offset;
+        while (position < limit) {
+            if (bytesToDiscard > 0) {
+                int count = (int) Math.min(bytesToDiscard, limit - position);
+                bytesToDiscard -= count;
+                position += count;
+                continue;
+            }
+
+            if (headerIndex < lengthFieldSize) {
+                long value = data[position++] & 0xFF;
+                if (bigEndian)
+                    frameLength = (frameLength << 8) | value;
+                else
+                    frameLength |= value << (8 * headerIndex);
+                headerIndex++;
+                if (headerIndex == lengthFieldSize) {
+                    if (frameLength > buffer.length) {
+                        Log.w(TAG, "Discarding frame of " + frameLength + " bytes, maxFrameLength is " + buffer.length);
+                        bytesToDiscard = frameLength;
+                        nextFrame();
+                    } else if (frameLength == 0) {
+                        nextFrame();
+                    }
+                }
+                continue;
+            }
+
+            int missing = (int) frameLength - bufferIndex;
+            if (bufferIndex == 0 && limit - position >= missing) {
+                // The whole payload is inside data, so it is dispatched without copying.
+                listener.onFrame(data, position, missing, false);
+                position += missing;
+                nextFrame();
+                continue;
+            }
+            int count = Math.min(missing, limit - position);
+            System.arraycopy(data, position, buffer, bufferIndex, count);
+            bufferIndex += count;
+            position += count;
+            if (bufferIndex == frameLength) {
+                listener.onFrame(buffer, 0, bufferIndex, false);
+                nextFrame();
+            }
+        }
+    }
+
+    private void nextFrame() {
+        headerIndex = 0;
+        frameLength = 0;
+        bufferIndex = 0;
+    }
+
+    @Override
+    public void reset() {
+        nextFrame();
+        bytesToDiscard = 0;
+    }
+}
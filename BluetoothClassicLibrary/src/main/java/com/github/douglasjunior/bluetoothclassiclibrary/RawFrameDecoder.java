@@ -0,0 +1,103 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Unframed binary data, without any delimiter. The received bytes are dispatched as soon as at
+ * least minBytes are available, when bufferSize bytes are pending, or when no more bytes arrive
+ * for idleFlushMillis.
+ */
+public class RawFrameDecoder implements FrameDecoder {
+
+    private final int minBytes;
+    private final long idleFlushMillis;
+    private final byte[] buffer;
+    private int bufferIndex = 0;
+
+    /**
+     * @param minBytes        the number of bytes that are dispatched without waiting, 1 to dispatch every read
+     * @param idleFlushMillis the time without receiving bytes after which the pending bytes are dispatched,
+     *                        0 to wait for minBytes
+     * @param bufferSize      the maximum number of pending bytes
+     */
+    public RawFrameDecoder(int minBytes, long idleFlushMillis, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("bufferSize must be positive: " + bufferSize);
+        if (minBytes < 1 || minBytes > bufferSize)
+            throw new IllegalArgumentException("minBytes must be between 1 and bufferSize: " + minBytes);
+        if (idleFlushMillis < 0)
+            throw new IllegalArgumentException("idleFlushMillis must not be negative: " + idleFlushMillis);
+        this.minBytes = minBytes;
+        this.idleFlushMillis = idleFlushMillis;
+        this.buffer = new byte[bufferSize];
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        if (bufferIndex == 0 && length >= minBytes) {
+            // Enough bytes were received at once, so they are dispatched without copying.
+            listener.onFrame(data, offset, length, false);
+            return;
+        }
+        final int limit = offset + length;
+        int position = offset;
+        while (position < limit) {
+            int count = Math.min(limit - position, buffer.length - bufferIndex);
+            System.arraycopy(data, position, buffer, bufferIndex, count);
+            bufferIndex += count;
+            position += count;
+            if (bufferIndex >= minBytes) {
+                listener.onFrame(buffer, 0, bufferIndex, false);
+                bufferIndex = 0;
+            }
+        }
+    }
+
+    /**
+     * Dispatches the pending bytes, if any.
+     */
+    public void flush(FrameListener listener) {
+        if (bufferIndex > 0) {
+            listener.onFrame(buffer, 0, bufferIndex, false);
+            bufferIndex = 0;
+        }
+    }
+
+    /**
+     * Whether there are bytes waiting for {@link #flush(FrameListener)}.
+     */
+    public boolean hasPendingBytes() {
+        return bufferIndex > 0;
+    }
+
+    public long getIdleFlushMillis() {
+        return idleFlushMillis;
+    }
+
+    @Override
+    public void reset() {
+        bufferIndex = 0;
+    }
+}
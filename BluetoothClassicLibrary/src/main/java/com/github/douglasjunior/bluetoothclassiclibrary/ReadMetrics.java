@@ -0,0 +1,125 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Statistics of the received data during one interval, delivered to the
+ * {@link BluetoothService.OnBluetoothMetricsCallback}. <br/>
+ * The histograms have {@link #BUCKETS} buckets, the bucket i counts the values from 2^i
+ * (inclusive) to 2^(i+1) (exclusive), and the bucket 0 also counts the value 0.
+ *
+ * @see BluetoothConfiguration#metricsIntervalMillis
+ */
+public final class ReadMetrics {
+
+    public static final int BUCKETS = 32;
+
+    private final long intervalMillis;
+    private final long bytes;
+    private final long frames;
+    private final long[] frameSizeHistogram;
+    private final long[] dispatchLagHistogram;
+    private final long dispatchLagCount;
+    private final long dispatchLagTotalMicros;
+    private final long dispatchLagMaxMicros;
+
+    ReadMetrics(long intervalMillis, long bytes, long frames, long[] frameSizeHistogram,
+                long[] dispatchLagHistogram, long dispatchLagCount, long dispatchLagTotalMicros,
+                long dispatchLagMaxMicros) {
+        this.intervalMillis = intervalMillis;
+        this.bytes = bytes;
+        this.frames = frames;
+        this.frameSizeHistogram = frameSizeHistogram;
+        this.dispatchLagHistogram = dispatchLagHistogram;
+        this.dispatchLagCount = dispatchLagCount;
+        this.dispatchLagTotalMicros = dispatchLagTotalMicros;
+        this.dispatchLagMaxMicros = dispatchLagMaxMicros;
+    }
+
+    static int bucketOf(long value) {
+        return value <= 1 ? 0 : Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(value));
+    }
+
+    /**
+     * Duration of the interval in milliseconds.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Bytes received from the device.
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Frames decoded from the received bytes.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    public double getBytesPerSecond() {
+        return intervalMillis > 0 ? bytes * 1000d / intervalMillis : 0;
+    }
+
+    public double getFramesPerSecond() {
+        return intervalMillis > 0 ? frames * 1000d / intervalMillis : 0;
+    }
+
+    /**
+     * Frame sizes, in bytes.
+     */
+    public long[] getFrameSizeHistogram() {
+        return frameSizeHistogram;
+    }
+
+    /**
+     * Time from the read of the data to the call of the read callback, in microseconds.
+     */
+    public long[] getDispatchLagHistogram() {
+        return dispatchLagHistogram;
+    }
+
+    public long getAverageDispatchLagMicros() {
+        return dispatchLagCount > 0 ? dispatchLagTotalMicros / dispatchLagCount : 0;
+    }
+
+    public long getMaxDispatchLagMicros() {
+        return dispatchLagMaxMicros;
+    }
+
+    @Override
+    public String toString() {
+        return "ReadMetrics{" +
+                "bytesPerSecond=" + getBytesPerSecond() +
+                ", framesPerSecond=" + getFramesPerSecond() +
+                ", averageDispatchLagMicros=" + getAverageDispatchLagMicros() +
+                ", maxDispatchLagMicros=" + dispatchLagMaxMicros +
+                '}';
+    }
+}
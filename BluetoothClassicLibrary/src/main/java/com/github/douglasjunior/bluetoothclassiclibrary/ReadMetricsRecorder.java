@@ -0,0 +1,89 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Accumulates the {@link ReadMetrics} of the current interval. The reading thread records the
+ * bytes and frames, the delivering thread records the dispatch lag.
+ */
+final class ReadMetricsRecorder {
+
+    private final long intervalNanos;
+    private long intervalStart;
+
+    private long bytes;
+    private long frames;
+    private long[] frameSizes = new long[ReadMetrics.BUCKETS];
+    private long[] dispatchLags = new long[ReadMetrics.BUCKETS];
+    private long dispatchLagCount;
+    private long dispatchLagTotalMicros;
+    private long dispatchLagMaxMicros;
+
+    ReadMetricsRecorder(long intervalMillis) {
+        this.intervalNanos = intervalMillis * 1000000L;
+        this.intervalStart = System.nanoTime();
+    }
+
+    synchronized void recordBytes(int count) {
+        bytes += count;
+    }
+
+    synchronized void recordFrame(int length) {
+        frames++;
+        frameSizes[ReadMetrics.bucketOf(length)]++;
+    }
+
+    /**
+     * @param readNanos the {@link System#nanoTime()} when the data was read
+     */
+    synchronized void recordDispatchLag(long readNanos) {
+        long lagMicros = (System.nanoTime() - readNanos) / 1000L;
+        dispatchLags[ReadMetrics.bucketOf(lagMicros)]++;
+        dispatchLagCount++;
+        dispatchLagTotalMicros += lagMicros;
+        if (lagMicros > dispatchLagMaxMicros)
+            dispatchLagMaxMicros = lagMicros;
+    }
+
+    /**
+     * Returns the metrics and starts a new interval if the current one is over, or null.
+     */
+    synchronized ReadMetrics poll(long nowNanos) {
+        long elapsed = nowNanos - intervalStart;
+        if (elapsed < intervalNanos)
+            return null;
+        ReadMetrics metrics = new ReadMetrics(elapsed / 1000000L, bytes, frames, frameSizes,
+                dispatchLags, dispatchLagCount, dispatchLagTotalMicros, dispatchLagMaxMicros);
+        intervalStart = nowNanos;
+        bytes = 0;
+        frames = 0;
+        frameSizes = new long[ReadMetrics.BUCKETS];
+        dispatchLags = new long[ReadMetrics.BUCKETS];
+        dispatchLagCount = 0;
+        dispatchLagTotalMicros = 0;
+        dispatchLagMaxMicros = 0;
+        return metrics;
+    }
+}
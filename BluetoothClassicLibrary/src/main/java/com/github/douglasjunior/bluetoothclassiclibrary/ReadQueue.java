@@ -0,0 +1,145 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * Bounded ring buffer between the reading thread and the callbacks running in the main thread.
+ * Items are received data (byte[]), {@link BluetoothFrame} or {@link ReadBatch}.
+ *
+ * @see BluetoothConfiguration#readQueueCapacity
+ */
+final class ReadQueue {
+
+    private final Object[] items;
+    private final long[] readTimes;
+    private final ReadOverflowPolicy policy;
+    private int head = 0;
+    private int size = 0;
+    private boolean draining = false;
+    private long droppedFrames = 0;
+    private long polledReadNanos = 0;
+
+    ReadQueue(int capacity, ReadOverflowPolicy policy) {
+        this.items = new Object[capacity];
+        this.readTimes = new long[capacity];
+        this.policy = policy != null ? policy : ReadOverflowPolicy.BLOCK;
+    }
+
+    /**
+     * Adds the item, applying the overflow policy if the queue is full.
+     *
+     * @param readNanos the {@link System#nanoTime()} when the item was read, or 0
+     * @return true if the queue must be drained, false if a drain is already pending
+     */
+    synchronized boolean offer(Object item, long readNanos) {
+        if (size == items.length) {
+            switch (policy) {
+                case BLOCK:
+                    try {
+                        while (size == items.length)
+                            wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        drop(item);
+                        return false;
+                    }
+                    break;
+                case DROP_OLDEST:
+                    drop(removeFirst());
+                    break;
+                case DROP_NEWEST:
+                    drop(item);
+                    return false;
+                case CONFLATE:
+                    while (size > 0)
+                        drop(removeFirst());
+                    break;
+            }
+        }
+        int tail = (head + size) % items.length;
+        items[tail] = item;
+        readTimes[tail] = readNanos;
+        size++;
+        if (draining)
+            return false;
+        draining = true;
+        return true;
+    }
+
+    /**
+     * Removes the oldest item, or returns null and ends the drain if the queue is empty.
+     */
+    synchronized Object poll() {
+        if (size == 0) {
+            draining = false;
+            return null;
+        }
+        polledReadNanos = readTimes[head];
+        Object item = removeFirst();
+        notifyAll();
+        return item;
+    }
+
+    /**
+     * The read time of the item returned by the last {@link #poll()}.
+     */
+    synchronized long getPolledReadNanos() {
+        return polledReadNanos;
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    private Object removeFirst() {
+        Object item = items[head];
+        items[head] = null;
+        head = (head + 1) % items.length;
+        size--;
+        return item;
+    }
+
+    private void drop(Object item) {
+        if (item instanceof ReadBatch)
+            droppedFrames += ((ReadBatch) item).size();
+        else
+            droppedFrames++;
+        release(item);
+    }
+
+    private static void release(Object item) {
+        if (item instanceof BluetoothFrame) {
+            ((BluetoothFrame) item).release();
+        } else if (item instanceof ReadBatch) {
+            ReadBatch batch = (ReadBatch) item;
+            for (int i = 0; i < batch.frames.size(); i++)
+                batch.frames.get(i).release();
+        }
+    }
+}
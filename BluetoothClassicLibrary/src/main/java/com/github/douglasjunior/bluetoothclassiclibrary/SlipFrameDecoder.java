@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import android.util.Log;
+
+/**
+ * Frames encoded with SLIP (RFC 1055). Empty frames are ignored and frames longer than
+ * maxFrameLength are discarded up to the next END byte.
+ */
+public class SlipFrameDecoder implements FrameDecoder {
+
+    private static final String TAG = SlipFrameDecoder.class.getSimpleName();
+
+    public static final byte END = (byte) 0xC0;
+    public static final byte ESC = (byte) 0xDB;
+    public static final byte ESC_END = (byte) 0xDC;
+    public static final byte ESC_ESC = (byte) 0xDD;
+
+    private final byte[] buffer;
+    private int bufferIndex = 0;
+    private boolean escaped = false;
+    private boolean discarding = false;
+
+    public SlipFrameDecoder(int maxFrameLength) {
+        if (maxFrameLength < 1)
+            throw new IllegalArgumentException("maxFrameLength must be positive: " + maxFrameLength);
+        this.buffer = new byte[maxFrameLength];
+    }
+
+    @Override
+    public void decode(byte[] data, int offset, int length, FrameListener listener) {
+        final int limit = offset + length;
+        for (int i = offset; i < limit; i++) {
+            byte value = data[i];
+            if (value == END) {
+                if (!discarding && bufferIndex > 0)
+                    listener.onFrame(buffer, 0, bufferIndex, false);
+                reset();
+                continue;
+            }
+            if (discarding)
+                continue;
+
+            if (escaped) {
+                escaped = false;
+                if (value == ESC_END)
+                    value = END;
+                else if (value == ESC_ESC)
+                    value = ESC;
+            } else if (value == ESC) {
+                escaped = true;
+                continue;
+            }
+
+            if (bufferIndex == buffer.length) {
+                Log.w(TAG, "Discarding frame longer than " + buffer.length + " bytes");
+                discarding = true;
+                continue;
+            }
+            buffer[bufferIndex++] = value;
+        }
+    }
+
+    @Override
+    public void reset() {
+        bufferIndex = 0;
+        escaped = false;
+        discarding = false;
+    }
+}
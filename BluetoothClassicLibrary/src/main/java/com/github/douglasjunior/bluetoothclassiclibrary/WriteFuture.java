@@ -0,0 +1,126 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The result of a {@link BluetoothService#write(byte[], boolean)}. <br/>
+ * It completes when the bytes are flushed to the device, or when every packet is acknowledged in
+ * Bluetooth Low Energy, and fails with the {@link java.io.IOException} or
+ * {@link BluetoothWriteException} that stopped the write.
+ */
+public final class WriteFuture {
+
+    // The SystemClock.uptimeMillis() after which the write times out, or 0.
+    long deadline;
+
+    private boolean done;
+    private Throwable cause;
+    private List<Listener> listeners;
+
+    /**
+     * Whether the write has completed, successfully or not.
+     */
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Whether the write has completed successfully.
+     */
+    public synchronized boolean isSuccess() {
+        return done && cause == null;
+    }
+
+    /**
+     * The reason of the failure, or null if the write has not failed.
+     */
+    public synchronized Throwable getCause() {
+        return cause;
+    }
+
+    /**
+     * Waits until the write completes.
+     */
+    public synchronized void await() throws InterruptedException {
+        while (!done)
+            wait();
+    }
+
+    /**
+     * Waits until the write completes or the timeout expires.
+     *
+     * @return true if the write has completed
+     */
+    public synchronized boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toMillis(timeout);
+        long deadline = System.currentTimeMillis() + remaining;
+        while (!done && remaining > 0) {
+            wait(remaining);
+            remaining = deadline - System.currentTimeMillis();
+        }
+        return done;
+    }
+
+    /**
+     * Adds a listener called when the write completes, as the other listeners of the
+     * {@link BluetoothService}. If the write has already completed, the listener is called immediately.
+     */
+    public WriteFuture addListener(Listener listener) {
+        synchronized (this) {
+            if (!done) {
+                if (listeners == null)
+                    listeners = new ArrayList<>(1);
+                listeners.add(listener);
+                return this;
+            }
+        }
+        listener.onWriteComplete(this);
+        return this;
+    }
+
+    /**
+     * Completes the write, a null cause means success.
+     *
+     * @return the listeners to be notified, or null if the write has already completed or there are no listeners
+     */
+    synchronized List<Listener> complete(Throwable cause) {
+        if (done)
+            return null;
+        this.done = true;
+        this.cause = cause;
+        notifyAll();
+        List<Listener> result = listeners;
+        listeners = null;
+        return result;
+    }
+
+    public interface Listener {
+        void onWriteComplete(WriteFuture future);
+    }
+
+}
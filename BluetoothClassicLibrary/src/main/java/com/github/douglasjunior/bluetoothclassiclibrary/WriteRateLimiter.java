@@ -0,0 +1,114 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+/**
+ * A token bucket that paces the outbound bytes to bytesPerSecond, allowing bursts of up to
+ * burstBytes. It also counts the time the writes were held back, to help finding the fastest rate
+ * a device keeps up with.
+ *
+ * @see BluetoothConfiguration#writeRateBytesPerSecond
+ */
+public class WriteRateLimiter {
+
+    private final long bytesPerSecond;
+    private final int burstBytes;
+
+    private double tokens;
+    private long lastNanos;
+
+    private long throttledNanos = 0;
+    private long throttledWrites = 0;
+
+    /**
+     * @param bytesPerSecond the sustained rate
+     * @param burstBytes     the number of bytes that can be sent at once after an idle period
+     */
+    public WriteRateLimiter(long bytesPerSecond, int burstBytes) {
+        if (bytesPerSecond < 1)
+            throw new IllegalArgumentException("bytesPerSecond must be positive: " + bytesPerSecond);
+        if (burstBytes < 1)
+            throw new IllegalArgumentException("burstBytes must be positive: " + burstBytes);
+        this.bytesPerSecond = bytesPerSecond;
+        this.burstBytes = burstBytes;
+        this.tokens = burstBytes;
+        this.lastNanos = System.nanoTime();
+    }
+
+    /**
+     * Reserves the bytes without blocking.
+     *
+     * @return how long, in nanoseconds, the caller must wait before sending the bytes, 0 to send them now
+     */
+    public synchronized long reserve(int bytes) {
+        long now = System.nanoTime();
+        tokens = Math.min(burstBytes, tokens + (now - lastNanos) * (double) bytesPerSecond / 1000000000L);
+        lastNanos = now;
+        tokens -= bytes;
+        if (tokens >= 0)
+            return 0;
+        // The deficit is paid by the wait, so the following writes are paced after this one.
+        long wait = (long) Math.ceil(-tokens * 1000000000L / bytesPerSecond);
+        throttledNanos += wait;
+        throttledWrites++;
+        return wait;
+    }
+
+    /**
+     * Reserves the bytes and blocks the calling thread until they can be sent.
+     */
+    public void acquire(int bytes) throws InterruptedException {
+        long wait = reserve(bytes);
+        if (wait > 0)
+            Thread.sleep(wait / 1000000L, (int) (wait % 1000000L));
+    }
+
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public int getBurstBytes() {
+        return burstBytes;
+    }
+
+    /**
+     * The total time, in milliseconds, the writes were held back.
+     */
+    public synchronized long getThrottledMillis() {
+        return throttledNanos / 1000000L;
+    }
+
+    /**
+     * The number of writes that had to wait.
+     */
+    public synchronized long getThrottledWrites() {
+        return throttledWrites;
+    }
+
+    public synchronized void resetStatistics() {
+        throttledNanos = 0;
+        throttledWrites = 0;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+package com.github.douglasjunior.bluetoothclassiclibrary;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A write waiting in the write queue of {@link BluetoothClassicService}.
+ */
+final class WriteRequest {
+
+    // The array given to write(byte[]), reported to onDataWrite, or null for gather writes.
+    final byte[] data;
+    final ByteBuffer[] buffers;
+    final int length;
+    final boolean flush;
+    final WritePriority priority;
+    final WriteFuture future;
+
+    WriteRequest(byte[] data, boolean flush, WritePriority priority, WriteFuture future) {
+        this.data = data;
+        this.buffers = new ByteBuffer[]{ByteBuffer.wrap(data)};
+        this.length = data.length;
+        this.flush = flush;
+        this.priority = priority;
+        this.future = future;
+    }
+
+    WriteRequest(ByteBuffer[] buffers, boolean flush, WritePriority priority, WriteFuture future) {
+        int length = 0;
+        for (ByteBuffer buffer : buffers)
+            length += buffer.remaining();
+        this.data = null;
+        this.buffers = buffers;
+        this.length = length;
+        this.flush = flush;
+        this.priority = priority;
+        this.future = future;
+    }
+
+    /**
+     * Copies the bytes of every buffer to the destination, without changing the buffers.
+     */
+    void copyTo(byte[] destination, int offset) {
+        for (ByteBuffer buffer : buffers) {
+            int count = buffer.remaining();
+            if (buffer.hasArray())
+                System.arraycopy(buffer.array(), buffer.arrayOffset() + buffer.position(), destination, offset, count);
+            else
+                buffer.duplicate().get(destination, offset, count);
+            offset += count;
+        }
+    }
+
+}
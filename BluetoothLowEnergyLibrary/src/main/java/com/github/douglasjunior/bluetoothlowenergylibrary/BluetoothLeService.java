@@ -36,6 +36,8 @@ import android.bluetooth.BluetoothManager;
 import android.bluetooth.BluetoothProfile;
 import android.content.Context;
 import android.os.Build;
+import android.os.Handler;
+import android.os.SystemClock;
 import android.support.annotation.RequiresApi;
 import android.support.annotation.RequiresPermission;
 import android.util.Log;
@@ -43,14 +45,21 @@ import android.util.Log;
 import com.github.douglasjunior.bluetoothclassiclibrary.BluetoothConfiguration;
 import com.github.douglasjunior.bluetoothclassiclibrary.BluetoothService;
 import com.github.douglasjunior.bluetoothclassiclibrary.BluetoothStatus;
+import com.github.douglasjunior.bluetoothclassiclibrary.BluetoothWriteException;
+import com.github.douglasjunior.bluetoothclassiclibrary.WriteFuture;
+import com.github.douglasjunior.bluetoothclassiclibrary.WritePriority;
+import com.github.douglasjunior.bluetoothclassiclibrary.WriteTimeoutException;
+
+import java.io.IOException;
 
 import java.lang.reflect.Method;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -61,23 +70,83 @@ public class BluetoothLeService extends BluetoothService {
     private static final String TAG = BluetoothLeService.class.getSimpleName();
 
     private static final long SCAN_PERIOD = 10000;
+    private static final long PRIORITY_CHECK_INTERVAL = 500;
+
+    private static final UUID CLIENT_CHARACTERISTIC_CONFIG = UUID.fromString("00002902-0000-1000-8000-00805f9b34fb");
 
     private final BluetoothAdapter btAdapter;
-    private BluetoothGatt bluetoothGatt;
-    private BluetoothGattCharacteristic characteristicRxTx;
+    private volatile BluetoothGatt bluetoothGatt;
+    private volatile BluetoothGattCharacteristic characteristicRxTx;
+
+    private final Object writeLock = new Object();
+    private final LinkedList<PendingWrite> controlWrites = new LinkedList<>();
+    private final LinkedList<PendingWrite> bulkWrites = new LinkedList<>();
+    private PendingWrite inFlight;
+    // Whether the next packet waits for the rate limiter, and whether its bytes are already reserved.
+    private boolean throttled = false;
+    private boolean rateReserved = false;
+    // The packets that may be sent before the device acknowledges them, when writing without response.
+    private boolean writeNoResponse = false;
+    private int writeCredits;
+    private boolean waitingCredits = false;
+    // Reused for the packets, the characteristic value is copied when the packet is written.
+    private byte[] packetArray;
+    private byte[] tailArray;
+
+    private final Runnable resumeWrite = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (writeLock) {
+                throttled = false;
+                if (inFlight == null)
+                    writeCharacteristic();
+            }
+        }
+    };
+
+    private volatile int maxTransferBytes = 20;
 
-    private final byte[] readBuffer;
-    private int readBufferIndex = 0;
-    private byte[][] writeBuffer;
-    private int writeBufferIndex = 0;
+    private final Object gattLock = new Object();
+    private final LinkedList<GattOperation> gattOperations = new LinkedList<>();
+    private GattOperation currentOperation;
+    private int gattQueueMaxDepth;
+    private long gattTimeouts;
+    // The callbacks still expected from the operations that timed out, by type.
+    private final int[] staleCallbacks = new int[GattOperation.Type.values().length];
+    // Runs the internal timers, the operation timeouts and the throttled packets.
+    private final Handler gattHandler;
 
-    private int maxTransferBytes = 20;
+    private OnBluetoothRssiCallback onRssiCallback;
+
+    // Non null only with adaptiveConnectionPriority.
+    private final Handler priorityHandler;
+    private final AtomicLong priorityReadBytes = new AtomicLong();
+    private volatile int activePriority = BluetoothGatt.CONNECTION_PRIORITY_BALANCED;
+    private volatile long priorityCheckedAt;
+    private volatile long busyAt;
+
+    private final Runnable priorityCheck = new Runnable() {
+        @Override
+        public void run() {
+            checkConnectionPriority();
+            priorityHandler.postDelayed(this, PRIORITY_CHECK_INTERVAL);
+        }
+    };
+
+    private final Runnable priorityRaise = new Runnable() {
+        @Override
+        public void run() {
+            busyAt = SystemClock.uptimeMillis();
+            adaptConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        }
+    };
 
     protected BluetoothLeService(BluetoothConfiguration config) {
         super(config);
         BluetoothManager btManager = (BluetoothManager) config.context.getSystemService(Context.BLUETOOTH_SERVICE);
         btAdapter = btManager.getAdapter();
-        readBuffer = new byte[config.bufferSize];
+        gattHandler = new Handler();
+        priorityHandler = config.adaptiveConnectionPriority ? new Handler() : null;
     }
 
     private final BluetoothGattCallback btleGattCallback = new BluetoothGattCallback() {
@@ -92,6 +161,7 @@ public class BluetoothLeService extends BluetoothService {
                 // It discounts 3 bytes of metadata.
                 maxTransferBytes = mtu - 3;
             }
+            completeOperation(GattOperation.Type.REQUEST_MTU, null, status);
         }
 
         @Override
@@ -112,6 +182,7 @@ public class BluetoothLeService extends BluetoothService {
             } else {
                 System.err.println("onCharacteristicRead error " + status);
             }
+            completeOperation(GattOperation.Type.READ_CHARACTERISTIC, characteristic, status);
         }
 
         @Override
@@ -120,19 +191,10 @@ public class BluetoothLeService extends BluetoothService {
             final byte[] data = characteristic.getValue();
             //Log.v(TAG, "onCharacteristicWrite status: " + status + " data: " + new String(data));
             Log.v(TAG, "onCharacteristicWrite status: " + status + " data: " + data.length);
-            if (BluetoothGatt.GATT_SUCCESS == status || status == 11) {
-                if (onEventCallback != null)
-                    runOnMainThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            onEventCallback.onDataWrite(data);
-                        }
-                    });
-                writeCharacteristic();
-            } else {
+            if (BluetoothGatt.GATT_SUCCESS != status && status != 11) {
                 System.err.println("onCharacteristicWrite error " + status);
             }
-
+            completeOperation(GattOperation.Type.WRITE_CHARACTERISTIC, characteristic, status);
         }
 
         @RequiresPermission(Manifest.permission.BLUETOOTH)
@@ -142,6 +204,8 @@ public class BluetoothLeService extends BluetoothService {
             Log.v(TAG, "onConnectionStateChange: status: " + status + " newState: " + newState);
             if (status != BluetoothGatt.GATT_SUCCESS || newState == BluetoothProfile.STATE_DISCONNECTED) {
                 gatt.close();
+                failWrites(new IOException("Connection closed"));
+                clearOperations();
                 if (mStatus == BluetoothStatus.NONE || mStatus == BluetoothStatus.CONNECTING)
                     makeToast("Unable to connect to device");
                 else if (mStatus == BluetoothStatus.CONNECTED)
@@ -167,12 +231,21 @@ public class BluetoothLeService extends BluetoothService {
         public void onDescriptorWrite(BluetoothGatt gatt, BluetoothGattDescriptor descriptor, int status) {
             Log.v(TAG, "onDescriptorWrite");
             super.onDescriptorWrite(gatt, descriptor, status);
+            completeOperation(GattOperation.Type.WRITE_DESCRIPTOR, descriptor, status);
         }
 
         @Override
-        public void onReadRemoteRssi(BluetoothGatt gatt, int rssi, int status) {
+        public void onReadRemoteRssi(BluetoothGatt gatt, final int rssi, int status) {
             Log.v(TAG, "onReadRemoteRssi");
             super.onReadRemoteRssi(gatt, rssi, status);
+            if (BluetoothGatt.GATT_SUCCESS == status && onRssiCallback != null)
+                runOnMainThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onRssiCallback.onReadRemoteRssi(rssi);
+                    }
+                });
+            completeOperation(GattOperation.Type.READ_RSSI, null, status);
         }
 
         @Override
@@ -199,12 +272,13 @@ public class BluetoothLeService extends BluetoothService {
                             if (characteristic.getUuid().equals(mConfig.uuidCharacteristic)) {
                                 characteristicRxTx = characteristic;
                                 gatt.setCharacteristicNotification(characteristic, true);
+                                enableNotification(characteristic);
+                                setWriteType(characteristic);
 
                                 if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
                                     // Request the MTU size to device.
                                     // See also https://stackoverflow.com/questions/24135682/android-sending-data-20-bytes-by-ble
-                                    boolean requestMtu = bluetoothGatt.requestMtu(512);
-                                    Log.v(TAG, "requestMtu: " + requestMtu);
+                                    requestMtu(512);
 
                                     // Request a specific connection priority.
                                     // CONNECTION_PRIORITY_BALANCED is the default value if no connection parameter update is requested
@@ -256,37 +330,9 @@ public class BluetoothLeService extends BluetoothService {
 //    }
 
     private void readData(byte[] data) {
-        final byte byteDelimiter = (byte) mConfig.characterDelimiter;
-        for (byte temp : data) {
-
-            if (temp == byteDelimiter) {
-                if (readBufferIndex > 0) {
-                    dispatchBuffer(readBuffer, readBufferIndex);
-                    readBufferIndex = 0;
-                }
-                continue;
-            }
-            if (readBufferIndex == readBuffer.length - 1) {
-                dispatchBuffer(readBuffer, readBufferIndex);
-                readBufferIndex = 0;
-            }
-            readBuffer[readBufferIndex] = temp;
-            readBufferIndex++;
-
-        }
-    }
-
-    private void dispatchBuffer(byte[] buffer, int i) {
-        final byte[] data = new byte[i];
-        System.arraycopy(buffer, 0, data, 0, i);
-        if (onEventCallback != null) {
-            runOnMainThread(new Runnable() {
-                @Override
-                public void run() {
-                    onEventCallback.onDataRead(data, data.length);
-                }
-            });
-        }
+        if (priorityHandler != null)
+            priorityReadBytes.addAndGet(data.length);
+        decodeData(data, 0, data.length);
     }
 
     private void makeToast(final String message) {
@@ -306,6 +352,7 @@ public class BluetoothLeService extends BluetoothService {
                 bluetoothGatt.disconnect();
             }
 
+            resetFrameDecoder();
             updateState(BluetoothStatus.CONNECTING);
 
             /*
@@ -463,72 +510,625 @@ public class BluetoothLeService extends BluetoothService {
             bluetoothGatt.close();
         }
         bluetoothGatt = null;
+        clearOperations();
     }
 
     @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
     @Override
-    public void requestConnectionPriority(int connectionPriority) {
+    public void requestConnectionPriority(final int connectionPriority) {
         if (bluetoothGatt != null) {
             if (connectionPriority >= BluetoothGatt.CONNECTION_PRIORITY_BALANCED
                     && connectionPriority <= BluetoothGatt.CONNECTION_PRIORITY_LOW_POWER) {
-                boolean requestConnectionPriority = bluetoothGatt.requestConnectionPriority(connectionPriority);
-                Log.v(TAG, "requestConnectionPriority("+connectionPriority+"): " + requestConnectionPriority);
+                activePriority = connectionPriority;
+                enqueueOperation(new GattOperation(GattOperation.Type.REQUEST_CONNECTION_PRIORITY) {
+                    @Override
+                    boolean execute() {
+                        BluetoothGatt gatt = bluetoothGatt;
+                        boolean requestConnectionPriority = gatt != null && gatt.requestConnectionPriority(connectionPriority);
+                        Log.v(TAG, "requestConnectionPriority(" + connectionPriority + "): " + requestConnectionPriority);
+                        return requestConnectionPriority;
+                    }
+                });
             } else
                 Log.e(TAG, "requestConnectionPriority("+connectionPriority+"): ERROR - connectionPriority not within valid range");
         }
     }
 
     /**
-     * Splits the bytes into packets according to the MTU size of the device, and writes the packets sequentially.
+     * @return the connection priority last requested, by the app or by the
+     * {@link BluetoothConfiguration#adaptiveConnectionPriority}
+     */
+    public int getConnectionPriority() {
+        return activePriority;
+    }
+
+    /**
+     * Starts the {@link BluetoothConfiguration#adaptiveConnectionPriority} checks while connected.
+     */
+    @Override
+    protected synchronized void updateState(BluetoothStatus status) {
+        super.updateState(status);
+        if (priorityHandler != null) {
+            priorityHandler.removeCallbacks(priorityCheck);
+            priorityHandler.removeCallbacks(priorityRaise);
+            if (status == BluetoothStatus.CONNECTED) {
+                priorityReadBytes.set(0);
+                priorityCheckedAt = busyAt = SystemClock.uptimeMillis();
+                activePriority = mConfig.connectionPriority;
+                priorityHandler.postDelayed(priorityCheck, PRIORITY_CHECK_INTERVAL);
+            }
+        }
+    }
+
+    /**
+     * Raises the connection priority when the pending writes or the read rate reach their threshold,
+     * and restores {@link BluetoothConfiguration#connectionPriority} when both have stayed below half
+     * of it for {@link BluetoothConfiguration#connectionPriorityIdleMillis}.
+     */
+    private void checkConnectionPriority() {
+        long now = SystemClock.uptimeMillis();
+        long readRate = priorityReadBytes.getAndSet(0) * 1000 / Math.max(1, now - priorityCheckedAt);
+        priorityCheckedAt = now;
+        int writeBytes = pendingWriteBytes();
+
+        int writeThreshold = mConfig.highPriorityWriteBytes;
+        int readThreshold = mConfig.highPriorityReadBytesPerSecond;
+        if ((writeThreshold > 0 && writeBytes >= writeThreshold) || (readThreshold > 0 && readRate >= readThreshold)) {
+            busyAt = now;
+            adaptConnectionPriority(BluetoothGatt.CONNECTION_PRIORITY_HIGH);
+        } else if ((writeThreshold > 0 && writeBytes >= writeThreshold / 2) || (readThreshold > 0 && readRate >= readThreshold / 2)) {
+            busyAt = now;
+        } else if (now - busyAt >= mConfig.connectionPriorityIdleMillis) {
+            adaptConnectionPriority(mConfig.connectionPriority);
+        }
+    }
+
+    private void adaptConnectionPriority(int connectionPriority) {
+        if (activePriority != connectionPriority && Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+            Log.v(TAG, "adaptConnectionPriority: " + activePriority + " -> " + connectionPriority);
+            requestConnectionPriority(connectionPriority);
+        }
+    }
+
+    private int pendingWriteBytes() {
+        synchronized (writeLock) {
+            int bytes = 0;
+            for (PendingWrite write : controlWrites)
+                bytes += write.remaining;
+            for (PendingWrite write : bulkWrites)
+                bytes += write.remaining;
+            return bytes;
+        }
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.LOLLIPOP)
+    private void requestMtu(final int mtu) {
+        enqueueOperation(new GattOperation(GattOperation.Type.REQUEST_MTU) {
+            @Override
+            boolean execute() {
+                BluetoothGatt gatt = bluetoothGatt;
+                boolean requestMtu = gatt != null && gatt.requestMtu(mtu);
+                Log.v(TAG, "requestMtu: " + requestMtu);
+                return requestMtu;
+            }
+        });
+    }
+
+    /**
+     * Writes the Client Characteristic Configuration descriptor, so the device starts sending the
+     * notifications (or indications) of the characteristic.
+     */
+    private void enableNotification(BluetoothGattCharacteristic characteristic) {
+        final BluetoothGattDescriptor descriptor = characteristic.getDescriptor(CLIENT_CHARACTERISTIC_CONFIG);
+        if (descriptor == null)
+            return;
+        final boolean indicate = (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_NOTIFY) == 0
+                && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_INDICATE) != 0;
+        enqueueOperation(new GattOperation(GattOperation.Type.WRITE_DESCRIPTOR, descriptor) {
+            @Override
+            boolean execute() {
+                BluetoothGatt gatt = bluetoothGatt;
+                descriptor.setValue(indicate ? BluetoothGattDescriptor.ENABLE_INDICATION_VALUE
+                        : BluetoothGattDescriptor.ENABLE_NOTIFICATION_VALUE);
+                boolean writeDescriptor = gatt != null && gatt.writeDescriptor(descriptor);
+                Log.v(TAG, "writeDescriptor: " + writeDescriptor);
+                return writeDescriptor;
+            }
+        });
+    }
+
+    /**
+     * Reads the value of the characteristic, delivered like the notifications of the device.
+     */
+    public void readCharacteristic() {
+        if (bluetoothGatt != null && characteristicRxTx != null) {
+            enqueueOperation(new GattOperation(GattOperation.Type.READ_CHARACTERISTIC, characteristicRxTx) {
+                @Override
+                boolean execute() {
+                    BluetoothGatt gatt = bluetoothGatt;
+                    boolean readCharacteristic = gatt != null && gatt.readCharacteristic(characteristicRxTx);
+                    Log.v(TAG, "readCharacteristic: " + readCharacteristic);
+                    return readCharacteristic;
+                }
+            });
+        }
+    }
+
+    /**
+     * Reads the RSSI of the connected device, delivered to the {@link OnBluetoothRssiCallback}.
+     */
+    public void readRemoteRssi() {
+        if (bluetoothGatt != null) {
+            enqueueOperation(new GattOperation(GattOperation.Type.READ_RSSI) {
+                @Override
+                boolean execute() {
+                    BluetoothGatt gatt = bluetoothGatt;
+                    boolean readRemoteRssi = gatt != null && gatt.readRemoteRssi();
+                    Log.v(TAG, "readRemoteRssi: " + readRemoteRssi);
+                    return readRemoteRssi;
+                }
+            });
+        }
+    }
+
+    public void setOnRssiCallback(OnBluetoothRssiCallback onRssiCallback) {
+        this.onRssiCallback = onRssiCallback;
+    }
+
+    /**
+     * @return the number of GATT operations queued, including the one running
+     */
+    public int getGattQueueDepth() {
+        synchronized (gattLock) {
+            return gattOperations.size() + (currentOperation != null ? 1 : 0);
+        }
+    }
+
+    /**
+     * @return the highest {@link #getGattQueueDepth()} since the last {@link #resetGattStatistics()}
+     */
+    public int getGattQueueMaxDepth() {
+        synchronized (gattLock) {
+            return gattQueueMaxDepth;
+        }
+    }
+
+    /**
+     * @return the number of GATT operations whose callback did not arrive within
+     * {@link BluetoothConfiguration#gattOperationTimeoutMillis}
+     */
+    public long getGattTimeouts() {
+        synchronized (gattLock) {
+            return gattTimeouts;
+        }
+    }
+
+    public void resetGattStatistics() {
+        synchronized (gattLock) {
+            gattQueueMaxDepth = 0;
+            gattTimeouts = 0;
+        }
+    }
+
+    /**
+     * Queues the operation, Android drops a GATT request issued while another one is outstanding.
+     */
+    private void enqueueOperation(GattOperation operation) {
+        synchronized (gattLock) {
+            gattOperations.add(operation);
+            gattQueueMaxDepth = Math.max(gattQueueMaxDepth, gattOperations.size() + (currentOperation != null ? 1 : 0));
+        }
+        nextOperation();
+    }
+
+    private void nextOperation() {
+        final GattOperation operation;
+        synchronized (gattLock) {
+            if (currentOperation != null || gattOperations.isEmpty())
+                return;
+            operation = gattOperations.removeFirst();
+            currentOperation = operation;
+        }
+        // The operation is finished outside the lock, its completion may queue the next one
+        if (!operation.execute()) {
+            finishOperation(operation, BluetoothGatt.GATT_FAILURE);
+        } else if (!operation.hasCallback()) {
+            finishOperation(operation, BluetoothGatt.GATT_SUCCESS);
+        } else if (mConfig.gattOperationTimeoutMillis > 0) {
+            operation.timeout = new Runnable() {
+                @Override
+                public void run() {
+                    finishOperation(operation, GattOperation.STATUS_TIMEOUT);
+                }
+            };
+            gattHandler.postDelayed(operation.timeout, mConfig.gattOperationTimeoutMillis);
+        }
+    }
+
+    /**
+     * Called from the callbacks, finishes the running operation if the callback is its own.
+     *
+     * @param target The characteristic or descriptor of the callback, or null
+     */
+    private void completeOperation(GattOperation.Type type, Object target, int status) {
+        GattOperation operation;
+        synchronized (gattLock) {
+            operation = currentOperation;
+            if (staleCallbacks[type.ordinal()] > 0) {
+                // The late callback of an operation that timed out, not the one of the running operation
+                staleCallbacks[type.ordinal()]--;
+                if (operation != null && operation.type == type)
+                    operation.staleIgnored = true;
+                Log.w(TAG, "Ignored a late " + type + " callback");
+                return;
+            }
+            if (operation == null || operation.type != type || (operation.target != null && operation.target != target))
+                return;
+        }
+        finishOperation(operation, status);
+    }
+
+    /**
+     * Gives up the running operation if it is of the given type, its callback will be ignored.
+     */
+    private void timeoutOperation(GattOperation.Type type) {
+        GattOperation operation;
+        synchronized (gattLock) {
+            operation = currentOperation;
+        }
+        if (operation != null && operation.type == type)
+            finishOperation(operation, GattOperation.STATUS_TIMEOUT);
+    }
+
+    private void finishOperation(GattOperation operation, int status) {
+        synchronized (gattLock) {
+            if (currentOperation != operation)
+                return;
+            currentOperation = null;
+            if (status == GattOperation.STATUS_TIMEOUT) {
+                gattTimeouts++;
+                Log.e(TAG, operation.type + " timed out");
+                // Unless the callback already ignored was this one, it may still arrive
+                if (!operation.staleIgnored)
+                    staleCallbacks[operation.type.ordinal()]++;
+            }
+        }
+        if (operation.timeout != null)
+            gattHandler.removeCallbacks(operation.timeout);
+        operation.onComplete(status);
+        nextOperation();
+    }
+
+    /**
+     * Drops the queued operations, their callbacks are not coming once the connection is closed.
+     */
+    private void clearOperations() {
+        synchronized (gattLock) {
+            if (currentOperation != null && currentOperation.timeout != null)
+                gattHandler.removeCallbacks(currentOperation.timeout);
+            currentOperation = null;
+            gattOperations.clear();
+            for (int i = 0; i < staleCallbacks.length; i++)
+                staleCallbacks[i] = 0;
+        }
+    }
+
+    /**
+     * Writes the bytes in packets according to the MTU size of the device, sequentially.
+     * The packets of the pending {@link WritePriority#CONTROL} writes are sent before the next packet of the
+     * {@link WritePriority#BULK} write. The writes of each lane are sent in order, so this method can be called
+     * from any thread without waiting for the previous write to complete. The data is kept by reference and must not be modified until the write is complete.
      *
      * See also https://stackoverflow.com/questions/24135682/android-sending-data-20-bytes-by-ble
      *
      * @param data
+     * @param flush    Ignored, the packets are always sent immediately.
+     * @param priority The lane of the write.
+     * @return a {@link WriteFuture} completed when the last packet is acknowledged
      */
-    public void write(byte[] data) {
+    @Override
+    public WriteFuture write(byte[] data, boolean flush, WritePriority priority) {
         Log.v(TAG, "write: " + data.length);
+        return enqueueWrite(data, new ByteBuffer[]{ByteBuffer.wrap(data)}, data.length, priority);
+    }
+
+    /**
+     * Writes the remaining bytes of the buffers in packets according to the MTU size of the device,
+     * filling each packet across the buffer boundaries, sequentially. The buffers are kept by reference
+     * and must not be modified until the write is complete.
+     *
+     * @param buffers
+     * @param flush    Ignored, the packets are always sent immediately.
+     * @param priority The lane of the write.
+     * @return a {@link WriteFuture} completed when the last packet is acknowledged
+     */
+    @Override
+    public WriteFuture write(ByteBuffer[] buffers, boolean flush, WritePriority priority) {
+        int length = 0;
+        for (ByteBuffer buffer : buffers)
+            length += buffer.remaining();
+        Log.v(TAG, "write: " + length);
+        return enqueueWrite(null, buffers, length, priority);
+    }
+
+    private WriteFuture enqueueWrite(byte[] data, ByteBuffer[] buffers, int length, WritePriority priority) {
         if (bluetoothGatt != null && characteristicRxTx != null && mStatus == BluetoothStatus.CONNECTED) {
-            if (data.length <= maxTransferBytes) {
-                writeBufferIndex = 0;
-                writeBuffer = new byte[1][data.length];
-                writeBuffer[0] = data;
-            } else {
-                writeBufferIndex = 0;
-                int bufferSize = (data.length / maxTransferBytes) + 1;
-                writeBuffer = new byte[bufferSize][maxTransferBytes];
-
-                for (int i = 0; i < writeBuffer.length; i++) {
-                    int start = i * maxTransferBytes;
-                    int end = start + maxTransferBytes;
-                    if (start >= data.length)
-                        break;
-                    if (end > data.length)
-                        end = data.length;
-                    writeBuffer[i] = Arrays.copyOfRange(data, start, end);
+            PendingWrite write = new PendingWrite(data, buffers, length, newWriteFuture());
+            if (length == 0) {
+                completeWrite(write.future, null);
+                return write.future;
+            }
+            synchronized (writeLock) {
+                if (priority == WritePriority.CONTROL)
+                    controlWrites.add(write);
+                else
+                    bulkWrites.add(write);
+                if (priorityHandler != null && mConfig.highPriorityWriteBytes > 0 && length >= mConfig.highPriorityWriteBytes
+                        && activePriority != BluetoothGatt.CONNECTION_PRIORITY_HIGH) {
+                    // Does not wait for the next check, the transfer starts now
+                    priorityHandler.post(priorityRaise);
                 }
+                // Otherwise the next packet is sent when the one in flight is acknowledged
+                if (inFlight == null && !throttled)
+                    writeCharacteristic();
             }
-            writeCharacteristic();
+            return write.future;
         }
+        return failedWrite(new IOException("Not connected"));
     }
 
     /**
-     * Writes next packet to the Characteristic.
+     * Returns the array for a packet of the given size. The full packets share one array and the
+     * last packets one array per distinct length, they are reused because a single packet is in flight.
+     */
+    private byte[] packetArray(int size) {
+        if (size == maxTransferBytes) {
+            if (packetArray == null || packetArray.length != size)
+                packetArray = new byte[size];
+            return packetArray;
+        }
+        if (tailArray == null || tailArray.length != size)
+            tailArray = new byte[size];
+        return tailArray;
+    }
+
+    /**
+     * Called when the packet in flight is acknowledged, completes its write if it was the last packet
+     * and sends the next one.
+     *
+     * @param failure The error of the packet, or null if it was written
+     */
+    private void writeNext(IOException failure) {
+        synchronized (writeLock) {
+            endWriteChunk();
+            PendingWrite write = inFlight;
+            inFlight = null;
+            // A write failed by a timeout after its first packet does not send the rest of its bytes
+            if (write != null && (failure != null || write.remaining == 0 || write.future.isDone())) {
+                removeWrite(write);
+                if (failure == null && !write.future.isDone())
+                    dispatchDataWrite(write.data);
+                completeWrite(write.future, failure);
+            }
+            if (!throttled)
+                writeCharacteristic();
+        }
+    }
+
+    /**
+     * Reports a complete write, the gather writes are not reported.
+     */
+    private void dispatchDataWrite(final byte[] data) {
+        if (data != null && onEventCallback != null)
+            runOnMainThread(new Runnable() {
+                @Override
+                public void run() {
+                    onEventCallback.onDataWrite(data);
+                }
+            });
+    }
+
+    /**
+     * Queues the next packet to the Characteristic, the control lane first.
      *
      */
     private void writeCharacteristic() {
-        Log.v(TAG, "writeCharacteristic " + writeBufferIndex);
-        if (writeBufferIndex >= writeBuffer.length)
+        PendingWrite write;
+        while (true) {
+            write = !controlWrites.isEmpty() ? controlWrites.getFirst() : bulkWrites.peek();
+            if (write == null)
+                return;
+            // A write that timed out before its first packet is not sent
+            if (write.remaining < write.length || !write.future.isDone())
+                break;
+            removeWrite(write);
+        }
+        Log.v(TAG, "writeCharacteristic " + (write.length - write.remaining));
+
+        final int size = Math.min(maxTransferBytes, write.remaining);
+
+        final boolean credited = writeNoResponse && mConfig.writeWindowPackets > 0;
+        if (credited && writeCredits <= 0) {
+            // The window is full, the sending resumes in addWriteCredits(). The wait is watched like a
+            // packet in flight, so a device that never returns credits fails the pending writes.
+            Log.v(TAG, "writeCharacteristic waiting for credits");
+            if (!waitingCredits) {
+                waitingCredits = true;
+                beginWriteChunk();
+            }
             return;
+        }
+        if (waitingCredits) {
+            waitingCredits = false;
+            endWriteChunk();
+        }
+
+        if (writeRateLimiter != null && !rateReserved) {
+            long wait = writeRateLimiter.reserve(size);
+            if (wait > 0) {
+                // The callbacks thread must not block, so the packet is sent later
+                throttled = true;
+                rateReserved = true;
+                gattHandler.postDelayed(resumeWrite, (wait + 999999L) / 1000000L);
+                return;
+            }
+        }
+        rateReserved = false;
+        if (credited)
+            writeCredits--;
+
+        final byte[] bytes = packetArray(size);
+        write.fill(bytes);
+        inFlight = write;
+        enqueueOperation(new GattOperation(GattOperation.Type.WRITE_CHARACTERISTIC, characteristicRxTx) {
+            @Override
+            boolean execute() {
+                BluetoothGatt gatt = bluetoothGatt;
+                if (gatt == null)
+                    return false;
+                boolean setValue = characteristicRxTx.setValue(bytes);
+                Log.v(TAG, "setValue: " + setValue);
+
+                boolean writeCharacteristic = gatt.writeCharacteristic(characteristicRxTx);
+                Log.v(TAG, "writeCharacteristic: " + writeCharacteristic);
+                if (writeCharacteristic)
+                    beginWriteChunk();
+                return writeCharacteristic;
+            }
+
+            @Override
+            void onComplete(int status) {
+                if (BluetoothGatt.GATT_SUCCESS == status || status == 11)
+                    writeNext(null);
+                else if (status == STATUS_TIMEOUT)
+                    writeNext(new WriteTimeoutException("onCharacteristicWrite timed out"));
+                else
+                    writeNext(new BluetoothWriteException("onCharacteristicWrite error " + status, status));
+            }
+        });
+    }
+
+    /**
+     * Writes the packets without response if configured and supported by the characteristic.
+     */
+    private void setWriteType(BluetoothGattCharacteristic characteristic) {
+        synchronized (writeLock) {
+            writeNoResponse = mConfig.writeWithoutResponse
+                    && (characteristic.getProperties() & BluetoothGattCharacteristic.PROPERTY_WRITE_NO_RESPONSE) != 0;
+            writeCredits = mConfig.writeWindowPackets;
+            characteristic.setWriteType(writeNoResponse ? BluetoothGattCharacteristic.WRITE_TYPE_NO_RESPONSE
+                    : BluetoothGattCharacteristic.WRITE_TYPE_DEFAULT);
+            Log.v(TAG, "writeNoResponse: " + writeNoResponse);
+        }
+    }
+
+    /**
+     * Returns credits to the window of {@link BluetoothConfiguration#writeWithoutResponse}, call it when the
+     * device acknowledges the packets it received, usually parsed from its notifications.
+     *
+     * @param packets The number of packets acknowledged by the device.
+     * @see BluetoothConfiguration#writeWindowPackets
+     */
+    public void addWriteCredits(int packets) {
+        synchronized (writeLock) {
+            writeCredits = Math.min(writeCredits + packets, mConfig.writeWindowPackets);
+            if (inFlight == null && !throttled)
+                writeCharacteristic();
+        }
+    }
+
+    /**
+     * @return the packets that may still be sent before the device acknowledges them
+     */
+    public int getWriteCredits() {
+        synchronized (writeLock) {
+            return writeCredits;
+        }
+    }
+
+    private void removeWrite(PendingWrite write) {
+        if (!controlWrites.remove(write))
+            bulkWrites.remove(write);
+    }
+
+    /**
+     * The acknowledgment of the packet in flight was lost, drops the pending packets so the next
+     * writes are not blocked behind it.
+     */
+    @Override
+    protected void onWriteStall() {
+        failWrites(new WriteTimeoutException("Link stalled"));
+        // Unblocks the operation queue behind the packet
+        timeoutOperation(GattOperation.Type.WRITE_CHARACTERISTIC);
+    }
 
-        byte[] bytes = writeBuffer[writeBufferIndex];
+    /**
+     * Fails every pending write.
+     */
+    private void failWrites(IOException cause) {
+        synchronized (writeLock) {
+            for (PendingWrite write : controlWrites)
+                completeWrite(write.future, cause);
+            for (PendingWrite write : bulkWrites)
+                completeWrite(write.future, cause);
+            controlWrites.clear();
+            bulkWrites.clear();
+            inFlight = null;
+            throttled = false;
+            rateReserved = false;
+            // The packets dropped will not be acknowledged
+            writeCredits = mConfig.writeWindowPackets;
+            waitingCredits = false;
+            gattHandler.removeCallbacks(resumeWrite);
+        }
+    }
 
-        boolean setValue = characteristicRxTx.setValue(bytes);
-        Log.v(TAG, "setValue: " + setValue);
+    public interface OnBluetoothRssiCallback {
+        void onReadRemoteRssi(int rssi);
+    }
 
-        boolean writeCharacteristic = bluetoothGatt.writeCharacteristic(characteristicRxTx);
-        Log.v(TAG, "writeCharacteristic: " + writeCharacteristic);
+    /**
+     * The data of a write, kept by reference, and the position of the next packet to send.
+     */
+    private static final class PendingWrite {
+        final byte[] data;
+        final ByteBuffer[] buffers;
+        final int length;
+        final WriteFuture future;
+        int buffer;
+        int position;
+        int remaining;
+
+        PendingWrite(byte[] data, ByteBuffer[] buffers, int length, WriteFuture future) {
+            this.data = data;
+            this.buffers = buffers;
+            this.length = length;
+            this.future = future;
+            this.position = buffers.length > 0 ? buffers[0].position() : 0;
+            this.remaining = length;
+        }
 
-        writeBufferIndex++;
+        /**
+         * Copies the next packet.length bytes, across the buffer boundaries, without moving the buffers.
+         */
+        void fill(byte[] packet) {
+            int filled = 0;
+            while (filled < packet.length) {
+                ByteBuffer source = buffers[buffer];
+                int count = Math.min(packet.length - filled, source.limit() - position);
+                if (source.hasArray()) {
+                    System.arraycopy(source.array(), source.arrayOffset() + position, packet, filled, count);
+                } else {
+                    for (int i = 0; i < count; i++)
+                        packet[filled + i] = source.get(position + i);
+                }
+                filled += count;
+                position += count;
+                if (position == source.limit() && buffer + 1 < buffers.length)
+                    position = buffers[++buffer].position();
+            }
+            remaining -= packet.length;
+        }
     }
 
 }
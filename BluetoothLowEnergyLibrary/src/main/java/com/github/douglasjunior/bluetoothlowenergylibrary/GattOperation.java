@@ -0,0 +1,93 @@
+/*
+ * MIT License
+ *
+ * Copyright (c) 2015 Douglas Nassif Roma Junior
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.douglasjunior.bluetoothlowenergylibrary;
+
+import android.bluetooth.BluetoothGatt;
+
+/**
+ * A GATT request run by the operation queue of {@link BluetoothLeService}. Android keeps a single
+ * outstanding GATT request, so each operation is started only after the previous one completed.
+ */
+abstract class GattOperation {
+
+    /**
+     * The status passed to {@link #onComplete(int)} when the callback did not arrive in time.
+     */
+    static final int STATUS_TIMEOUT = -1;
+
+    enum Type {
+        WRITE_CHARACTERISTIC,
+        READ_CHARACTERISTIC,
+        WRITE_DESCRIPTOR,
+        REQUEST_MTU,
+        REQUEST_CONNECTION_PRIORITY,
+        READ_RSSI
+    }
+
+    final Type type;
+
+    // The characteristic or descriptor of the request, matched against the one of the callback.
+    final Object target;
+
+    // Posted when the operation starts, if a timeout is configured.
+    Runnable timeout;
+
+    // Whether a late callback of a previous operation was ignored while this one was running.
+    boolean staleIgnored;
+
+    GattOperation(Type type) {
+        this(type, null);
+    }
+
+    GattOperation(Type type, Object target) {
+        this.type = type;
+        this.target = target;
+    }
+
+    /**
+     * @return whether a {@link android.bluetooth.BluetoothGattCallback} reports the end of the operation,
+     * otherwise it is complete as soon as it is started
+     */
+    boolean hasCallback() {
+        return type != Type.REQUEST_CONNECTION_PRIORITY;
+    }
+
+    /**
+     * Issues the request.
+     *
+     * @return false if the request was refused
+     */
+    abstract boolean execute();
+
+    /**
+     * Called once when the operation ends.
+     *
+     * @param status The status of the callback, {@link BluetoothGatt#GATT_FAILURE} if the request was refused,
+     *               or {@link #STATUS_TIMEOUT}
+     */
+    void onComplete(int status) {
+    }
+
+}
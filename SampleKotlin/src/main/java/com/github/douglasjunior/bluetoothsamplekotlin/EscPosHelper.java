@@ -28,6 +28,7 @@ import android.graphics.Bitmap;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 
 /**
  * Code adapted from http://new-grumpy-mentat.blogspot.com.br/2014/06/java-escpos-image-printing.html
@@ -50,21 +51,31 @@ public final class EscPosHelper {
      */
     public static byte[] printImage(Bitmap image) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        printImage(image, baos);
+        return baos.toByteArray();
+    }
 
-        baos.write(SET_LINE_SPACE_24);
+    /**
+     * Send image to the printer to be printed, streaming the commands to the output.
+     * Use a {@link com.github.douglasjunior.bluetoothclassiclibrary.BluetoothOutputStream} to print large
+     * images without building the whole command in memory.
+     *
+     * @param image 2D Array of RGB colors (Row major order)
+     * @param out   Where the commands are written
+     */
+    public static void printImage(Bitmap image, OutputStream out) throws IOException {
+        out.write(SET_LINE_SPACE_24);
         for (int y = 0; y < image.getHeight(); y += 24) {
-            baos.write(SELECT_BIT_IMAGE_MODE);// bit mode
-            baos.write(new byte[]{(byte) (0x00ff & image.getWidth()), (byte) ((0xff00 & image.getWidth()) >> 8)});// width, low & high
+            out.write(SELECT_BIT_IMAGE_MODE);// bit mode
+            out.write(new byte[]{(byte) (0x00ff & image.getWidth()), (byte) ((0xff00 & image.getWidth()) >> 8)});// width, low & high
             for (int x = 0; x < image.getWidth(); x++) {
                 // For each vertical line/slice must collect 3 bytes (24 bytes)
-                baos.write(collectSlice(y, x, image));
+                out.write(collectSlice(y, x, image));
             }
 
-            baos.write(FEED_LINE);
+            out.write(FEED_LINE);
         }
-        baos.write(SET_LINE_SPACE_30);
-
-        return baos.toByteArray();
+        out.write(SET_LINE_SPACE_30);
     }
 
     /**